@@ -0,0 +1,130 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.sst.utopia.booking.UtopiaBookingApplication;
+import com.sst.utopia.booking.dao.AirportDao;
+import com.sst.utopia.booking.dao.FlightDao;
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.dao.UserDao;
+import com.sst.utopia.booking.model.Airport;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.User;
+
+/**
+ * Helpers to start the application (without a web server) against its own
+ * in-memory database and fill that database with sample data, for use by the
+ * benchmarks.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class BenchmarkContext {
+	/**
+	 * The flight number of the sample flight.
+	 */
+	public static final int FLIGHT_NUMBER = 152;
+
+	/**
+	 * The seat letters in each row of the sample flight.
+	 */
+	public static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+	/**
+	 * Do not instantiate.
+	 */
+	private BenchmarkContext() {
+	}
+
+	/**
+	 * Start the application, without a web server, against a fresh in-memory
+	 * database.
+	 *
+	 * @param database   the name of the database, which should be unique to the
+	 *                   benchmark (and parameters) being run
+	 * @param properties any further properties to set, as "key=value" strings;
+	 *                   like the database URL, these override the configuration
+	 *                   files
+	 * @return the application context
+	 */
+	public static ConfigurableApplicationContext start(final String database,
+			final String... properties) {
+		return start(WebApplicationType.NONE, String.format(
+				"jdbc:h2:mem:%s;MODE=MYSQL;DATABASE_TO_UPPER=false", database),
+				properties);
+	}
+
+	/**
+	 * Start the application against the given database.
+	 *
+	 * @param type       whether to start a web server
+	 * @param url        the JDBC URL of the database, which should be empty
+	 * @param properties any further properties to set, as "key=value" strings;
+	 *                   like the database URL, these override the configuration
+	 *                   files
+	 * @return the application context
+	 */
+	public static ConfigurableApplicationContext start(
+			final WebApplicationType type, final String url,
+			final String... properties) {
+		final List<String> args = new ArrayList<>();
+		args.add("--spring.datasource.url=" + url);
+		for (final String property : properties) {
+			args.add("--" + property);
+		}
+		return new SpringApplicationBuilder(UtopiaBookingApplication.class)
+				.web(type).run(args.toArray(new String[0]));
+	}
+
+	/**
+	 * Create the sample airports, user, and flight, and the given number of seats
+	 * on that flight (filling each row from 'A' to 'Z' before moving on to the
+	 * next).
+	 *
+	 * @param context the application context
+	 * @param seats   how many seats to create
+	 * @return the sample flight
+	 */
+	public static Flight seed(final ConfigurableApplicationContext context,
+			final int seats) {
+		final AirportDao airportDao = context.getBean(AirportDao.class);
+		final UserDao userDao = context.getBean(UserDao.class);
+		final FlightDao flightDao = context.getBean(FlightDao.class);
+		final TicketDao ticketDao = context.getBean(TicketDao.class);
+		airportDao.save(new Airport("QQQ", "Sample Airport One"));
+		airportDao.save(new Airport("QQX", "Sample Airport Two"));
+		userDao.save(new User(1, "sampleUser", "Sample User", "sample@example.com",
+				"5555555555"));
+		flightDao.save(new Flight(1, airportDao.findById("QQQ").get(),
+				LocalDateTime.now().plusDays(4), airportDao.findById("QQX").get(),
+				LocalDateTime.now().plusDays(6), FLIGHT_NUMBER));
+		final Flight flight = flightDao.findByFlightNumber(FLIGHT_NUMBER).get(0);
+		final List<Ticket> batch = new ArrayList<>();
+		for (int i = 0; i < seats; i++) {
+			batch.add(new Ticket(seat(flight, i), 3));
+			if (batch.size() == 1000) {
+				ticketDao.saveAll(batch);
+				batch.clear();
+			}
+		}
+		ticketDao.saveAll(batch);
+		return flight;
+	}
+
+	/**
+	 * @param flight the sample flight
+	 * @param index  the index of a seat, counting from 0
+	 * @return the location of that seat
+	 */
+	public static SeatLocation seat(final Flight flight, final int index) {
+		return new SeatLocation(flight, index / LETTERS.length() + 1,
+				String.valueOf(LETTERS.charAt(index % LETTERS.length())));
+	}
+}
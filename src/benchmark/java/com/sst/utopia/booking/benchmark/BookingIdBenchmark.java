@@ -0,0 +1,71 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.sst.utopia.booking.model.Airport;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.User;
+import com.sst.utopia.booking.service.BookingIdGenerator;
+import com.sst.utopia.booking.service.Md5BookingIdGenerator;
+import com.sst.utopia.booking.service.RandomBookingIdGenerator;
+
+/**
+ * Benchmark of the booking-ID generators. Run it with several threads (-t) as
+ * well as one to see how each behaves when many bookings are made at once.
+ *
+ * @author Jonathan Lovelace
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BookingIdBenchmark {
+	/**
+	 * The seat being booked.
+	 */
+	private final SeatLocation seat = new SeatLocation(
+			new Flight(1, new Airport("QQQ", "Sample Airport One"),
+					LocalDateTime.now().plusDays(4),
+					new Airport("QQX", "Sample Airport Two"),
+					LocalDateTime.now().plusDays(6), 152),
+			12, "C");
+	/**
+	 * Who is booking it.
+	 */
+	private final User user = new User(1, "sampleUser", "Sample User",
+			"sample@example.com", "5555555555");
+	/**
+	 * The legacy generator.
+	 */
+	private final BookingIdGenerator md5 = new Md5BookingIdGenerator();
+	/**
+	 * The default generator.
+	 */
+	private final BookingIdGenerator random = new RandomBookingIdGenerator();
+
+	/**
+	 * The legacy MD5-of-a-formatted-string booking ID.
+	 * @return the booking ID
+	 */
+	@Benchmark
+	public String md5() {
+		return md5.generate(seat, user);
+	}
+
+	/**
+	 * The default random booking ID.
+	 * @return the booking ID
+	 */
+	@Benchmark
+	public String random() {
+		return random.generate(seat, user);
+	}
+}
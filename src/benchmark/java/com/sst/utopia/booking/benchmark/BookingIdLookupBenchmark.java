@@ -0,0 +1,102 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.dao.UserDao;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.User;
+
+/**
+ * Benchmark of looking up a ticket by booking ID as the ticket table grows;
+ * with the booking-ID index, latency should stay (nearly) flat across table
+ * sizes.
+ *
+ * @author Jonathan Lovelace
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookingIdLookupBenchmark {
+	/**
+	 * How many (booked) tickets are in the table.
+	 */
+	@Param({ "1000", "10000", "100000" })
+	private int tableSize;
+
+	/**
+	 * The application.
+	 */
+	private ConfigurableApplicationContext context;
+	/**
+	 * DAO under test.
+	 */
+	private TicketDao ticketDao;
+	/**
+	 * The booking ID of every ticket.
+	 */
+	private String[] bookingIds;
+
+	/**
+	 * Start the application and fill the ticket table with booked tickets.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkContext.start("bookingIdLookup" + tableSize);
+		final Flight flight = BenchmarkContext.seed(context, 0);
+		ticketDao = context.getBean(TicketDao.class);
+		final User user = context.getBean(UserDao.class).findById(1).get();
+		final LocalDateTime timeout = LocalDateTime.now().plusYears(1);
+		bookingIds = new String[tableSize];
+		final List<Ticket> batch = new ArrayList<>();
+		for (int i = 0; i < tableSize; i++) {
+			final Ticket ticket = new Ticket(BenchmarkContext.seat(flight, i), 3);
+			ticket.setReserver(user);
+			ticket.setReservationTimeout(timeout);
+			bookingIds[i] = "booking-" + i;
+			ticket.setBookingId(bookingIds[i]);
+			batch.add(ticket);
+			if (batch.size() == 1000) {
+				ticketDao.saveAll(batch);
+				batch.clear();
+			}
+		}
+		ticketDao.saveAll(batch);
+	}
+
+	/**
+	 * Shut the application down.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * Look up a random ticket by its booking ID.
+	 * @return the ticket
+	 */
+	@Benchmark
+	public Optional<Ticket> findOneByBookingId() {
+		return ticketDao.findOneByBookingId(
+				bookingIds[ThreadLocalRandom.current().nextInt(tableSize)]);
+	}
+}
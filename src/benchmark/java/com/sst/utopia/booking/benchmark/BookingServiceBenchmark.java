@@ -0,0 +1,144 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.dao.UserDao;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.User;
+import com.sst.utopia.booking.service.BookingService;
+
+/**
+ * Benchmarks of the main operations of the booking service, against an
+ * embedded H2 database in MySQL mode. Each benchmark leaves the seats it uses
+ * as it found them, so the cost of undoing the operation is included in the
+ * measurement; compare against {@link #bookAndCancel} to isolate it.
+ *
+ * @author Jonathan Lovelace
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookingServiceBenchmark {
+	/**
+	 * How many seats the sample flight has.
+	 */
+	private static final int SEATS = 520;
+
+	/**
+	 * The application.
+	 */
+	private ConfigurableApplicationContext context;
+	/**
+	 * Object under test.
+	 */
+	private BookingService service;
+	/**
+	 * Ticket DAO, used to reset tickets.
+	 */
+	private TicketDao ticketDao;
+	/**
+	 * The user booking tickets.
+	 */
+	private User user;
+	/**
+	 * Every seat on the sample flight.
+	 */
+	private SeatLocation[] seats;
+	/**
+	 * The booking IDs of the seats booked for {@link #getBooking}.
+	 */
+	private String[] bookingIds;
+	/**
+	 * The index of the next seat to use.
+	 */
+	private int next;
+
+	/**
+	 * Start the application and create the sample data.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkContext.start("bookingServiceBenchmark");
+		final Flight flight = BenchmarkContext.seed(context, SEATS);
+		service = context.getBean(BookingService.class);
+		ticketDao = context.getBean(TicketDao.class);
+		user = context.getBean(UserDao.class).findById(1).get();
+		seats = new SeatLocation[SEATS];
+		for (int i = 0; i < SEATS; i++) {
+			seats[i] = BenchmarkContext.seat(flight, i);
+		}
+		// The second half of the seats stay booked, for lookups.
+		bookingIds = new String[SEATS / 2];
+		for (int i = 0; i < bookingIds.length; i++) {
+			bookingIds[i] =
+					service.bookTicket(seats[SEATS / 2 + i], user).getBookingId();
+		}
+	}
+
+	/**
+	 * Shut the application down.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * @return the next seat from the first (unbooked) half of the flight
+	 */
+	private SeatLocation nextFreeSeat() {
+		next = (next + 1) % (SEATS / 2);
+		return seats[next];
+	}
+
+	/**
+	 * Book a seat and cancel the booking.
+	 * @return the booking, to defeat dead-code elimination
+	 */
+	@Benchmark
+	public Ticket bookAndCancel() {
+		final Ticket ticket = service.bookTicket(nextFreeSeat(), user);
+		service.cancelPendingReservation(ticket);
+		return ticket;
+	}
+
+	/**
+	 * Book a seat, pay for it, and reset it directly through the DAO (since paid
+	 * bookings cannot be cancelled), reloading it first so its version is
+	 * current.
+	 * @return the booking, to defeat dead-code elimination
+	 */
+	@Benchmark
+	public Ticket bookAndPay() {
+		final Ticket ticket = service.bookTicket(nextFreeSeat(), user);
+		final Ticket paid = service.acceptPayment(ticket, 300);
+		final Ticket reset = ticketDao.findById(paid.getId()).get();
+		reset.setReserver(null);
+		ticketDao.saveAndFlush(reset);
+		return paid;
+	}
+
+	/**
+	 * Look up a booking by its booking ID.
+	 * @return the booking
+	 */
+	@Benchmark
+	public Ticket getBooking() {
+		next = (next + 1) % bookingIds.length;
+		return service.getBooking(bookingIds[next]);
+	}
+}
@@ -0,0 +1,128 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the service's request execution modes ("platform", Tomcat's own
+ * thread pool, and "virtual", a virtual thread per request) under rising
+ * concurrency, by running the {@link FlashSaleLoadTest flash-sale load test}
+ * in each mode at each of a series of client counts, each against a fresh
+ * in-memory database, and then printing a table of throughput and latency
+ * percentiles.
+ *
+ * Options are given as "--name=value" arguments:
+ * <ul>
+ * <li>modes: comma-separated execution modes to compare (default
+ * "platform,virtual")</li>
+ * <li>clients: comma-separated client counts (default "50,200,800")</li>
+ * <li>requests: how many booking requests in each run (default 20000)</li>
+ * <li>seats: how many seats the flight has (default 520)</li>
+ * <li>hot-seats: how many of those are "hot" (default 10)</li>
+ * <li>skew: the fraction of requests that go after a hot seat (default
+ * 0.9)</li>
+ * </ul>
+ * Any other arguments are passed to the application in every run, so for
+ * example "--server.tomcat.max-threads=50" makes the platform mode's pool
+ * smaller, and "--spring.datasource.hikari.maximum-pool-size=..." changes
+ * the connection pool that bounds both modes.
+ *
+ * The virtual mode needs a Java 21 or later runtime; on an older one the
+ * application fails to start in it, which is reported in its rows.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class ExecutionModeBenchmark {
+	/**
+	 * Do not instantiate.
+	 */
+	private ExecutionModeBenchmark() {
+	}
+
+	/**
+	 * Run the comparison.
+	 *
+	 * @param args options, as described in the class documentation
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public static void main(final String... args) throws InterruptedException {
+		List<String> modes = Arrays.asList("platform", "virtual");
+		int[] clients = { 50, 200, 800 };
+		int requests = 20000;
+		int seats = 520;
+		int hotSeats = 10;
+		double skew = 0.9;
+		final List<String> passThrough = new ArrayList<>();
+		for (final String arg : args) {
+			final int equals = arg.indexOf('=');
+			final String name = arg.startsWith("--") && equals > 2
+					? arg.substring(2, equals) : "";
+			final String value = arg.substring(equals + 1);
+			switch (name) {
+			case "modes":
+				modes = Arrays.asList(value.split(","));
+				break;
+			case "clients":
+				clients = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt)
+						.toArray();
+				break;
+			case "requests":
+				requests = Integer.parseInt(value);
+				break;
+			case "seats":
+				seats = Integer.parseInt(value);
+				break;
+			case "hot-seats":
+				hotSeats = Integer.parseInt(value);
+				break;
+			case "skew":
+				skew = Double.parseDouble(value);
+				break;
+			default:
+				passThrough.add(arg.startsWith("--") ? arg.substring(2) : arg);
+				break;
+			}
+		}
+		hotSeats = Math.min(seats, hotSeats);
+
+		final StringBuilder table = new StringBuilder(String.format(
+				"%-9s %8s %10s %10s %10s %10s %10s %9s%n", "mode", "clients",
+				"req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "409 rate"));
+		boolean consistent = true;
+		int run = 0;
+		for (final String mode : modes) {
+			for (final int count : clients) {
+				final List<String> properties = new ArrayList<>(passThrough);
+				properties.add("utopia.execution.mode=" + mode);
+				final String url = String.format(
+						"jdbc:h2:mem:executionMode%d;MODE=MYSQL;DATABASE_TO_UPPER=false",
+						run++);
+				final FlashSaleLoadTest.Result result;
+				try {
+					result = FlashSaleLoadTest.run(count, requests, seats, hotSeats,
+							skew, url, properties);
+				} catch (final RuntimeException except) {
+					Throwable cause = except;
+					while (cause.getCause() != null) {
+						cause = cause.getCause();
+					}
+					table.append(String.format("%-9s %8d  failed to start: %s%n", mode,
+							count, cause));
+					continue;
+				}
+				consistent &= result.isConsistent();
+				table.append(String.format(
+						"%-9s %8d %10.0f %10.2f %10.2f %10.2f %10.2f %8.1f%%%n", mode,
+						count, result.getThroughput(), result.getLatency(0.5),
+						result.getLatency(0.99), result.getLatency(0.999),
+						result.getLatency(1.0), 100.0 * result.getConflictRate()));
+			}
+		}
+		System.out.print(table);
+		if (!consistent) {
+			System.out.println("FAILED: some seats were booked more than once");
+		}
+		System.exit(consistent ? 0 : 1);
+	}
+}
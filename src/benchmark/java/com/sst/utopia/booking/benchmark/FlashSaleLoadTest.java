@@ -0,0 +1,355 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.Ticket;
+
+/**
+ * A load generator simulating a "flash sale": many clients racing, all at
+ * once, to book seats on a single flight through the HTTP API, with most of
+ * them going after the same few "hot" seats. It starts the application on a
+ * random port against an empty database (an in-memory H2 database unless a
+ * JDBC URL is given, for example of a local MySQL instance), seeds the flight,
+ * fires the requests, and then reports throughput, latency percentiles, and
+ * the conflict (409) rate, and checks that no seat was booked twice.
+ *
+ * Options are given as "--name=value" arguments:
+ * <ul>
+ * <li>threads: how many concurrent clients (default 200)</li>
+ * <li>requests: how many booking requests in total (default 20000)</li>
+ * <li>seats: how many seats the flight has (default 520)</li>
+ * <li>hot-seats: how many of those are "hot" (default 10)</li>
+ * <li>skew: the fraction of requests that go after a hot seat (default
+ * 0.9)</li>
+ * <li>url: the JDBC URL of the database to use</li>
+ * </ul>
+ * Any other arguments are passed to the application, so for example
+ * "--spring.datasource.username=..." works as expected.
+ *
+ * The process exits with status 1 if any seat was double-booked.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class FlashSaleLoadTest {
+	/**
+	 * The JSON body identifying the sample user, who makes every booking.
+	 */
+	private static final byte[] USER = ("{\"id\":1,\"username\":\"sampleUser\","
+			+ "\"displayName\":\"Sample User\",\"email\":\"sample@example.com\","
+			+ "\"phone\":\"5555555555\"}").getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Do not instantiate.
+	 */
+	private FlashSaleLoadTest() {
+	}
+
+	/**
+	 * The results of one run of the load test.
+	 */
+	public static final class Result {
+		/**
+		 * How many concurrent clients there were.
+		 */
+		private final int clients;
+		/**
+		 * Requests completed per second.
+		 */
+		private final double throughput;
+		/**
+		 * Every request's latency, in nanoseconds, in ascending order.
+		 */
+		private final long[] latencies;
+		/**
+		 * How many responses there were with each status code.
+		 */
+		private final Map<Integer, Long> statuses;
+		/**
+		 * How many seats were booked more than once.
+		 */
+		private final int doubleBooked;
+		/**
+		 * How many seats the responses say were booked.
+		 */
+		private final int booked;
+		/**
+		 * How many seats the database says are reserved.
+		 */
+		private final long reserved;
+
+		/**
+		 * @param clients      how many concurrent clients there were
+		 * @param throughput   requests completed per second
+		 * @param latencies    every request's latency, in nanoseconds, sorted
+		 * @param statuses     how many responses had each status code
+		 * @param doubleBooked how many seats were booked more than once
+		 * @param booked       how many seats the responses say were booked
+		 * @param reserved     how many seats the database says are reserved
+		 */
+		Result(final int clients, final double throughput, final long[] latencies,
+				final Map<Integer, Long> statuses, final int doubleBooked,
+				final int booked, final long reserved) {
+			this.clients = clients;
+			this.throughput = throughput;
+			this.latencies = latencies;
+			this.statuses = statuses;
+			this.doubleBooked = doubleBooked;
+			this.booked = booked;
+			this.reserved = reserved;
+		}
+
+		/**
+		 * @return requests completed per second
+		 */
+		public double getThroughput() {
+			return throughput;
+		}
+
+		/**
+		 * @param percentile the percentile wanted, as a fraction
+		 * @return that percentile of the request latencies, in milliseconds
+		 */
+		public double getLatency(final double percentile) {
+			final int index = (int) Math.ceil(percentile * latencies.length) - 1;
+			return latencies[Math.max(0, index)] / 1e6;
+		}
+
+		/**
+		 * @return the fraction of requests answered with 409 (Conflict)
+		 */
+		public double getConflictRate() {
+			return (double) statuses.getOrDefault(HttpURLConnection.HTTP_CONFLICT, 0L)
+					/ latencies.length;
+		}
+
+		/**
+		 * @return whether no seat was booked twice, and the database agrees with
+		 *         the responses
+		 */
+		public boolean isConsistent() {
+			return doubleBooked == 0 && reserved == booked;
+		}
+
+		/**
+		 * Print a report of the run.
+		 *
+		 * @param out where to print it
+		 */
+		public void report(final PrintStream out) {
+			out.printf("%d requests from %d clients: %.0f req/s%n",
+					latencies.length, clients, throughput);
+			out.printf("latency p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms%n",
+					getLatency(0.5), getLatency(0.99), getLatency(0.999),
+					getLatency(1.0));
+			out.printf("conflict (409) rate %.1f%%%n", 100.0 * getConflictRate());
+			statuses.forEach((code, count) ->
+					out.printf("  HTTP %d: %d%n", code, count));
+			out.printf("%d seats booked, %d reserved in the database%n", booked,
+					reserved);
+			if (!isConsistent()) {
+				out.printf("FAILED: %d seats were booked more than once%n",
+						doubleBooked);
+			}
+		}
+	}
+
+	/**
+	 * Run the load test.
+	 *
+	 * @param args options, as described in the class documentation
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public static void main(final String... args) throws InterruptedException {
+		final Map<String, String> options = new HashMap<>();
+		final List<String> passThrough = new ArrayList<>();
+		for (final String arg : args) {
+			final int equals = arg.indexOf('=');
+			final String name = arg.startsWith("--") && equals > 2
+					? arg.substring(2, equals) : "";
+			switch (name) {
+			case "threads":
+			case "requests":
+			case "seats":
+			case "hot-seats":
+			case "skew":
+			case "url":
+				options.put(name, arg.substring(equals + 1));
+				break;
+			default:
+				passThrough.add(arg.startsWith("--") ? arg.substring(2) : arg);
+				break;
+			}
+		}
+		final int seats = Integer.parseInt(options.getOrDefault("seats", "520"));
+		final Result result = run(
+				Integer.parseInt(options.getOrDefault("threads", "200")),
+				Integer.parseInt(options.getOrDefault("requests", "20000")), seats,
+				Math.min(seats,
+						Integer.parseInt(options.getOrDefault("hot-seats", "10"))),
+				Double.parseDouble(options.getOrDefault("skew", "0.9")),
+				options.getOrDefault("url",
+						"jdbc:h2:mem:flashSale;MODE=MYSQL;DATABASE_TO_UPPER=false"),
+				passThrough);
+		result.report(System.out);
+		System.exit(result.isConsistent() ? 0 : 1);
+	}
+
+	/**
+	 * Start the application, run the load test against it, and shut it down.
+	 *
+	 * @param threads    how many concurrent clients
+	 * @param requests   how many booking requests in total
+	 * @param seats      how many seats the flight has
+	 * @param hotSeats   how many of those are "hot"
+	 * @param skew       the fraction of requests that go after a hot seat
+	 * @param url        the JDBC URL of the (empty) database to use
+	 * @param properties further properties for the application, as "key=value"
+	 *                   strings
+	 * @return the results
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public static Result run(final int threads, final int requests,
+			final int seats, final int hotSeats, final double skew,
+			final String url, final List<String> properties)
+			throws InterruptedException {
+		// Let every client keep its connection alive between requests.
+		System.setProperty("http.maxConnections", Integer.toString(threads));
+		final List<String> args = new ArrayList<>(properties);
+		args.add("server.port=0");
+		final ConfigurableApplicationContext context =
+				BenchmarkContext.start(WebApplicationType.SERVLET, url,
+						args.toArray(new String[0]));
+		try {
+			final Flight flight = BenchmarkContext.seed(context, seats);
+			final String base = String.format(
+					"http://localhost:%s/booking/book/flights/%d/rows/",
+					context.getEnvironment().getProperty("local.server.port"),
+					flight.getFlightNumber());
+
+			final long[] latencies = new long[requests];
+			final ConcurrentMap<Integer, LongAdder> statuses =
+					new ConcurrentHashMap<>();
+			final AtomicInteger[] successes = new AtomicInteger[seats];
+			for (int i = 0; i < seats; i++) {
+				successes[i] = new AtomicInteger();
+			}
+			final AtomicInteger nextRequest = new AtomicInteger();
+			final CountDownLatch startGate = new CountDownLatch(1);
+			final ExecutorService clients = Executors.newFixedThreadPool(threads);
+			for (int t = 0; t < threads; t++) {
+				final Random random = new Random(t);
+				clients.execute(() -> {
+					try {
+						startGate.await();
+					} catch (final InterruptedException except) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					for (int i = nextRequest.getAndIncrement(); i < requests;
+							i = nextRequest.getAndIncrement()) {
+						final int index = random.nextDouble() < skew
+								? random.nextInt(hotSeats) : random.nextInt(seats);
+						final SeatLocation seat = BenchmarkContext.seat(flight, index);
+						final long start = System.nanoTime();
+						final int code = book(base + seat.getRow() + "/seats/"
+								+ seat.getSeat());
+						latencies[i] = System.nanoTime() - start;
+						statuses.computeIfAbsent(code, key -> new LongAdder())
+								.increment();
+						if (code == HttpURLConnection.HTTP_CREATED) {
+							successes[index].incrementAndGet();
+						}
+					}
+				});
+			}
+			final long start = System.nanoTime();
+			startGate.countDown();
+			clients.shutdown();
+			clients.awaitTermination(1, TimeUnit.HOURS);
+			final double seconds = (System.nanoTime() - start) / 1e9;
+			Arrays.sort(latencies);
+
+			int doubleBooked = 0;
+			int booked = 0;
+			for (int i = 0; i < seats; i++) {
+				if (successes[i].get() > 1) {
+					doubleBooked++;
+				}
+				booked += Math.min(1, successes[i].get());
+			}
+			long reserved = 0;
+			for (final Ticket ticket : context.getBean(TicketDao.class).findAll()) {
+				if (ticket.getReserver() != null) {
+					reserved++;
+				}
+			}
+			final Map<Integer, Long> counts = new TreeMap<>();
+			statuses.forEach((code, count) -> counts.put(code, count.sum()));
+			return new Result(threads, requests / seconds, latencies, counts,
+					doubleBooked, booked, reserved);
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Try to book a seat as the sample user.
+	 *
+	 * @param url the URL of the seat's booking endpoint
+	 * @return the HTTP status of the response, or -1 if the request failed
+	 */
+	private static int book(final String url) {
+		try {
+			final HttpURLConnection connection =
+					(HttpURLConnection) new URL(url).openConnection();
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(USER);
+			}
+			final int code = connection.getResponseCode();
+			// Drain the body, so the connection can be reused.
+			final InputStream body = code < 400 ? connection.getInputStream()
+					: connection.getErrorStream();
+			if (body != null) {
+				try (InputStream in = body) {
+					final byte[] buffer = new byte[4096];
+					while (in.read(buffer) >= 0) {
+						// discard
+					}
+				}
+			}
+			return code;
+		} catch (final IOException except) {
+			return -1;
+		}
+	}
+}
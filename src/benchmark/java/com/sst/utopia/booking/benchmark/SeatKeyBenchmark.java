@@ -0,0 +1,221 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.sst.utopia.booking.model.Airport;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatKey;
+import com.sst.utopia.booking.model.SeatLocation;
+
+/**
+ * Benchmark of probing a concurrent map of seats, as the seat gate and the
+ * reservation-expiry scheduler do, keyed three ways: by a seat location hashed
+ * and compared the way {@link SeatLocation} used to be (through the whole
+ * flight, with a varargs hash), by {@link SeatLocation} as it is now, and by
+ * {@link SeatKey}.
+ *
+ * The key mix is meant to be realistic: a few hundred seats held across a day's
+ * flights, most of the probes for seats on a few busy flights, and each probe
+ * made with a location built from its own copy of the flight (as when each
+ * request loads it separately), so equality is never decided by identity. About
+ * half the probes miss.
+ *
+ * @author Jonathan Lovelace
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SeatKeyBenchmark {
+	/**
+	 * A seat location hashed and compared the way SeatLocation used to be.
+	 */
+	private static final class LegacySeatLocation {
+		/**
+		 * The location.
+		 */
+		private final SeatLocation seat;
+
+		/**
+		 * @param seat the location
+		 */
+		LegacySeatLocation(final SeatLocation seat) {
+			this.seat = seat;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(seat.getFlight(), seat.getRow(), seat.getSeat());
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (obj instanceof LegacySeatLocation) {
+				final SeatLocation other = ((LegacySeatLocation) obj).seat;
+				return Objects.equals(seat.getFlight(), other.getFlight())
+						&& seat.getRow() == other.getRow()
+						&& Objects.equals(seat.getSeat(), other.getSeat());
+			} else {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * How many probes each invocation makes.
+	 */
+	private static final int PROBES = 1024;
+
+	/**
+	 * How many seats are in the map.
+	 */
+	@Param({ "256", "4096" })
+	private int heldSeats;
+
+	/**
+	 * How many flights the seats are spread across.
+	 */
+	@Param("200")
+	private int flights;
+
+	/**
+	 * The map keyed the old way.
+	 */
+	private final Map<LegacySeatLocation, Long> legacyMap = new ConcurrentHashMap<>();
+	/**
+	 * The map keyed by seat location.
+	 */
+	private final Map<SeatLocation, Long> locationMap = new ConcurrentHashMap<>();
+	/**
+	 * The map keyed by seat key.
+	 */
+	private final Map<SeatKey, Long> keyMap = new ConcurrentHashMap<>();
+
+	/**
+	 * The probes, each with its own copy of its flight.
+	 */
+	private final SeatLocation[] probes = new SeatLocation[PROBES];
+
+	/**
+	 * @param index    which flight
+	 * @param departure when the day's first flight departs
+	 * @return a copy of that flight
+	 */
+	private static Flight flight(final int index, final LocalDateTime departure) {
+		return new Flight(index + 1,
+				new Airport(String.format("Q%02d", index % 100), "Departure"),
+				departure.plusMinutes(index * 7L),
+				new Airport(String.format("X%02d", index % 100), "Destination"),
+				departure.plusMinutes(index * 7L + 150), 100 + index);
+	}
+
+	/**
+	 * @param random the source of randomness
+	 * @return the index of a flight, skewed towards the first few
+	 */
+	private int skewedFlight(final Random random) {
+		final double roll = random.nextDouble();
+		return (int) (roll * roll * roll * flights);
+	}
+
+	/**
+	 * @param random the source of randomness
+	 * @param flight the flight
+	 * @return a random seat on it
+	 */
+	private static SeatLocation seat(final Random random, final Flight flight) {
+		return new SeatLocation(flight, random.nextInt(40) + 1,
+				String.valueOf(BenchmarkContext.LETTERS.charAt(random.nextInt(10))));
+	}
+
+	/**
+	 * Fill the maps and build the probes.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		final Random random = new Random(152);
+		final LocalDateTime departure = LocalDateTime.of(2020, 1, 1, 6, 0);
+		final SeatLocation[] held = new SeatLocation[heldSeats];
+		for (int i = 0; i < heldSeats; i++) {
+			held[i] = seat(random, flight(skewedFlight(random), departure));
+			legacyMap.put(new LegacySeatLocation(held[i]), (long) i);
+			locationMap.put(held[i], (long) i);
+			keyMap.put(SeatKey.of(held[i]), (long) i);
+		}
+		for (int i = 0; i < PROBES; i++) {
+			if (random.nextBoolean()) {
+				final SeatLocation seat = held[random.nextInt(heldSeats)];
+				probes[i] = new SeatLocation(
+						flight(seat.getFlight().getId() - 1, departure),
+						seat.getRow(), seat.getSeat());
+			} else {
+				probes[i] = seat(random, flight(skewedFlight(random), departure));
+			}
+		}
+	}
+
+	/**
+	 * Probe the map keyed the old way, building each key as the callers did.
+	 * @return the number of hits
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PROBES)
+	public int legacySeatLocation() {
+		int hits = 0;
+		for (final SeatLocation probe : probes) {
+			if (legacyMap.containsKey(new LegacySeatLocation(probe))) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Probe the map keyed by seat location.
+	 * @return the number of hits
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PROBES)
+	public int seatLocation() {
+		int hits = 0;
+		for (final SeatLocation probe : probes) {
+			if (locationMap.containsKey(probe)) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Probe the map keyed by seat key, packing each key as the callers do.
+	 * @return the number of hits
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PROBES)
+	public int seatKey() {
+		int hits = 0;
+		for (final SeatLocation probe : probes) {
+			if (keyMap.containsKey(SeatKey.of(probe))) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+}
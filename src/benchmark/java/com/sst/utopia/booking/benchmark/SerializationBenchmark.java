@@ -0,0 +1,83 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sst.utopia.booking.model.Airport;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.User;
+
+/**
+ * Benchmark of serializing the model objects the controller returns to JSON,
+ * with an object mapper configured the way Spring Boot configures the one it
+ * uses.
+ *
+ * @author Jonathan Lovelace
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+	/**
+	 * The object mapper.
+	 */
+	private ObjectMapper mapper;
+	/**
+	 * A sample flight.
+	 */
+	private Flight flight;
+	/**
+	 * A sample booked ticket.
+	 */
+	private Ticket ticket;
+
+	/**
+	 * Create the object mapper and sample objects.
+	 */
+	@Setup
+	public void setUp() {
+		mapper = Jackson2ObjectMapperBuilder.json().build();
+		flight = new Flight(1, new Airport("QQQ", "Sample Airport One"),
+				LocalDateTime.now().plusDays(4),
+				new Airport("QQX", "Sample Airport Two"),
+				LocalDateTime.now().plusDays(6), 152);
+		ticket = new Ticket(new SeatLocation(flight, 12, "C"), 3);
+		ticket.setReserver(new User(1, "sampleUser", "Sample User",
+				"sample@example.com", "5555555555"));
+		ticket.setReservationTimeout(LocalDateTime.now().plusMinutes(10));
+		ticket.setBookingId("0123456789abcdef0123456789abcdef");
+	}
+
+	/**
+	 * Serialize a ticket.
+	 * @return its JSON
+	 * @throws JsonProcessingException never, in practice
+	 */
+	@Benchmark
+	public String ticket() throws JsonProcessingException {
+		return mapper.writeValueAsString(ticket);
+	}
+
+	/**
+	 * Serialize a flight.
+	 * @return its JSON
+	 * @throws JsonProcessingException never, in practice
+	 */
+	@Benchmark
+	public String flight() throws JsonProcessingException {
+		return mapper.writeValueAsString(flight);
+	}
+}
@@ -0,0 +1,179 @@
+package com.sst.utopia.booking.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.Ticket;
+
+/**
+ * Benchmark comparing looking up a ticket by its packed numeric primary key
+ * (what the booking service now does) with looking it up by flight, row, and
+ * seat through the unique index on those columns (what the composite primary
+ * key used to mean), as the ticket table grows.
+ *
+ * When run against an empty MySQL database (pass, for example, "-p
+ * url=jdbc:mysql://localhost/utopia -p
+ * properties=spring.datasource.username=root,spring.datasource.password=..."),
+ * the size of each index on the ticket table is printed at the end of each
+ * trial, showing how much smaller the primary key, and so every secondary index
+ * (each of which holds a copy of the primary key), is than it was when the
+ * natural key was the primary key.
+ *
+ * @author Jonathan Lovelace
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TicketKeyBenchmark {
+	/**
+	 * Look up a ticket by its natural key.
+	 */
+	private static final String BY_LOCATION = "SELECT t FROM Ticket t "
+			+ "WHERE t.location.flight = :flight AND t.location.row = :row "
+			+ "AND t.location.seat = :seat";
+
+	/**
+	 * Get the size of each index on the ticket table, on MySQL.
+	 */
+	private static final String INDEX_SIZES = "SELECT index_name, "
+			+ "stat_value * @@innodb_page_size AS bytes FROM mysql.innodb_index_stats "
+			+ "WHERE database_name = DATABASE() AND table_name = 'tbl_tickets' "
+			+ "AND stat_name = 'size'";
+
+	/**
+	 * How many tickets are in the table.
+	 */
+	@Param({ "1000", "10000", "100000" })
+	private int tableSize;
+
+	/**
+	 * The JDBC URL of an empty database to run against, or empty for an
+	 * in-memory H2 database.
+	 */
+	@Param("")
+	private String url;
+
+	/**
+	 * Further properties (such as the database username and password) to start
+	 * the application with, as comma-separated "key=value" strings.
+	 */
+	@Param("")
+	private String properties;
+
+	/**
+	 * The application.
+	 */
+	private ConfigurableApplicationContext context;
+	/**
+	 * DAO under test.
+	 */
+	private TicketDao ticketDao;
+	/**
+	 * Used to look tickets up by location.
+	 */
+	private EntityManagerFactory entityManagerFactory;
+	/**
+	 * The location of every ticket.
+	 */
+	private SeatLocation[] seats;
+
+	/**
+	 * Start the application and fill the ticket table.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		final String[] extra =
+				properties.isEmpty() ? new String[0] : properties.split(",");
+		if (url.isEmpty()) {
+			context = BenchmarkContext.start("ticketKey" + tableSize, extra);
+		} else {
+			context = BenchmarkContext.start(WebApplicationType.NONE, url, extra);
+		}
+		final Flight flight = BenchmarkContext.seed(context, tableSize);
+		ticketDao = context.getBean(TicketDao.class);
+		entityManagerFactory = context.getBean(EntityManagerFactory.class);
+		seats = new SeatLocation[tableSize];
+		for (int i = 0; i < tableSize; i++) {
+			seats[i] = BenchmarkContext.seat(flight, i);
+		}
+	}
+
+	/**
+	 * Report index sizes, if the database can, and shut the application down.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		try {
+			final JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+			// Bring the statistics up to date with the rows just inserted.
+			jdbcTemplate.execute("ANALYZE TABLE tbl_tickets");
+			final List<Map<String, Object>> sizes =
+					jdbcTemplate.queryForList(INDEX_SIZES);
+			for (final Map<String, Object> row : sizes) {
+				System.out.printf("%ntbl_tickets index %s: %s bytes%n",
+						row.get("index_name"), row.get("bytes"));
+			}
+		} catch (final DataAccessException except) {
+			System.out.printf("%nIndex sizes are only available on MySQL%n");
+		}
+		context.close();
+	}
+
+	/**
+	 * @return the location of a random ticket
+	 */
+	private SeatLocation randomSeat() {
+		return seats[ThreadLocalRandom.current().nextInt(tableSize)];
+	}
+
+	/**
+	 * Look up a random ticket by its primary key.
+	 * @return the ticket
+	 */
+	@Benchmark
+	public Ticket findById() {
+		return ticketDao.findById(randomSeat().getKey()).get();
+	}
+
+	/**
+	 * Look up a random ticket by flight, row, and seat.
+	 * @return the ticket
+	 */
+	@Benchmark
+	public Ticket findByLocation() {
+		final SeatLocation seat = randomSeat();
+		final EntityManager entityManager =
+				entityManagerFactory.createEntityManager();
+		try {
+			return entityManager.createQuery(BY_LOCATION, Ticket.class)
+					.setParameter("flight", seat.getFlight())
+					.setParameter("row", seat.getRow())
+					.setParameter("seat", seat.getSeat()).getSingleResult();
+		} finally {
+			entityManager.close();
+		}
+	}
+}
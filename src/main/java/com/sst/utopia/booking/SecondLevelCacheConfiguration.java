@@ -0,0 +1,97 @@
+package com.sst.utopia.booking;
+
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.sst.utopia.booking.dao.FlightDao;
+import com.sst.utopia.booking.model.Airport;
+import com.sst.utopia.booking.model.Flight;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+
+/**
+ * Sets up the Hibernate second-level cache, which holds the reference data
+ * (airports and flights, and the flight-number query) that this service reads
+ * with nearly every request but never modifies. The caches are Caffeine caches,
+ * through JCache, bounded in size and expiring a configurable time after each
+ * entry is written, so changes the flights service makes are picked up
+ * eventually even if nobody invalidates them explicitly.
+ *
+ * The second-level cache itself is switched on in application.properties.
+ * Hibernate's own statistics are left off, since they are kept for every
+ * session and logged at the end of each; the reference-data regions keep JCache
+ * statistics instead, which are published as metrics.
+ *
+ * @author Jonathan Lovelace
+ */
+@Configuration
+public class SecondLevelCacheConfiguration {
+	/**
+	 * The regions holding reference data, which are bounded and expire.
+	 */
+	private static final String[] REFERENCE_REGIONS = { Airport.class.getName(),
+			Flight.class.getName(), FlightDao.FLIGHTS_BY_NUMBER_REGION };
+
+	/**
+	 * The region in which Hibernate records when each table last changed, to
+	 * know which cached query results are stale. It must not lose entries
+	 * before the query results do, so it is neither bounded nor expiring.
+	 */
+	private static final String TIMESTAMPS_REGION =
+			"default-update-timestamps-region";
+
+	/**
+	 * @param maximumSize the most entries to keep in each reference-data region
+	 * @param ttlSeconds  how long to keep each entry
+	 * @param registry    registry to publish cache metrics in
+	 * @return the cache manager for the second-level cache
+	 */
+	@Bean(destroyMethod = "close")
+	public CacheManager secondLevelCacheManager(
+			@Value("${utopia.cache.reference.maximum-size}") final long maximumSize,
+			@Value("${utopia.cache.reference.ttl-seconds}") final long ttlSeconds,
+			final MeterRegistry registry) {
+		// A manager of our own, rather than the provider's shared default one, so
+		// that several application contexts (in tests) do not collide.
+		final CacheManager manager = Caching
+				.getCachingProvider(CaffeineCachingProvider.class.getName())
+				.getCacheManager(URI.create("utopia:second-level:" + UUID.randomUUID()),
+						getClass().getClassLoader());
+		for (final String region : REFERENCE_REGIONS) {
+			final CaffeineConfiguration<Object, Object> config =
+					new CaffeineConfiguration<>();
+			config.setMaximumSize(OptionalLong.of(maximumSize));
+			config.setExpireAfterWrite(
+					OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+			config.setStatisticsEnabled(true);
+			JCacheMetrics.monitor(registry, manager.createCache(region, config));
+		}
+		manager.createCache(TIMESTAMPS_REGION, new CaffeineConfiguration<>());
+		return manager;
+	}
+
+	/**
+	 * @param secondLevelCacheManager the cache manager for the second-level cache
+	 * @return a customizer telling Hibernate to use it
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer secondLevelCacheCustomizer(
+			final CacheManager secondLevelCacheManager) {
+		return properties -> properties.put(ConfigSettings.CACHE_MANAGER,
+				secondLevelCacheManager);
+	}
+}
@@ -3,9 +3,11 @@ package com.sst.utopia.booking;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @PropertySource("classpath:database-config.properties")
 @SpringBootApplication
+@EnableScheduling
 public class UtopiaBookingApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,64 @@
+package com.sst.utopia.booking;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The "virtual" execution mode: Tomcat handles each request (including all the
+ * blocking database work the booking service does for it) on its own virtual
+ * thread, rather than on a thread from its fixed-size pool, so a spike in
+ * database latency no longer exhausts the request threads. Concurrency is then
+ * limited by the database connection pool instead, so size that accordingly.
+ *
+ * Selected by setting "utopia.execution.mode" to "virtual"; the default,
+ * "platform", leaves Tomcat's thread pool alone. Virtual threads need a Java 21
+ * or later runtime; the service is still compiled for Java 8 (the Spring Boot
+ * version in use cannot read newer class files), so the virtual-thread
+ * executor is looked up reflectively, and startup fails if it is missing.
+ *
+ * @author Jonathan Lovelace
+ */
+@Configuration
+@ConditionalOnProperty(name = "utopia.execution.mode", havingValue = "virtual")
+public class VirtualThreadConfiguration {
+	/**
+	 * @return an executor that starts a new virtual thread for each task
+	 * @throws IllegalStateException if the runtime does not support virtual
+	 *                               threads
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService virtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (final NoSuchMethodException | IllegalAccessException
+				| InvocationTargetException except) {
+			throw new IllegalStateException(
+					"utopia.execution.mode=virtual requires Java 21 or later", except);
+		}
+	}
+
+	/**
+	 * @param virtualThreadExecutor the executor to run requests on
+	 * @return a customizer making Tomcat run each request on a virtual thread
+	 */
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer(
+			final ExecutorService virtualThreadExecutor) {
+		return factory -> factory.addConnectorCustomizers(connector -> {
+			final ProtocolHandler handler = connector.getProtocolHandler();
+			if (handler instanceof AbstractProtocol) {
+				((AbstractProtocol<?>) handler).setExecutor(virtualThreadExecutor);
+			}
+		});
+	}
+}
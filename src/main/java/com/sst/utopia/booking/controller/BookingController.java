@@ -1,11 +1,11 @@
 package com.sst.utopia.booking.controller;
 
-import java.util.NoSuchElementException;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.dao.InvalidDataAccessApiUsageException;
-import org.springframework.http.HttpStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,29 +13,34 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.sst.utopia.booking.model.GroupBooking;
 import com.sst.utopia.booking.model.PaymentAmount;
-import com.sst.utopia.booking.model.SeatLocation;
 import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.TicketDetails;
 import com.sst.utopia.booking.model.User;
-import com.sst.utopia.booking.service.BookingService;
+import com.sst.utopia.booking.service.FlightSeats;
 
 /**
  * Controller to present the booking service to the microservices that provide
- * the client-facing API.
+ * the client-facing API. Used when the service runs as a servlet application
+ * (the default); see {@link ReactiveBookingController} for the alternative.
  *
  * @author Jonathan Lovelace
  */
 @RestController
 @RequestMapping("/booking")
+@ConditionalOnWebApplication(type = Type.SERVLET)
 public class BookingController {
 	/**
-	 * Service class used to handle requests.
+	 * The handling of each request, shared with the reactive controller.
 	 */
 	@Autowired
-	private BookingService service;
+	private BookingRequestHandler handler;
 	/**
 	 * Reserve a ticket for the given seat.
 	 * FIXME: Allow getting the user from headers (injected by the security layer)
@@ -43,24 +48,30 @@ public class BookingController {
 	 * @param row the row number of the seat
 	 * @param seat the seat within the row
 	 * @param user the user details
+	 * @param idempotencyKey the client's key for this request, if any; a retry
+	 *                       with the same key gets the original response
 	 */
 	@PostMapping("/book/flights/{flight}/rows/{row}/seats/{seat}")
 	public ResponseEntity<Ticket> bookTicket(@PathVariable final int flight,
 			@PathVariable final int row, @PathVariable final String seat,
-			@RequestBody final User user) {
-		try {
-			return new ResponseEntity<>(service.bookTicket(
-					new SeatLocation(service.getFlight(flight), row, seat), user),
-					HttpStatus.CREATED);
-		} catch (final IllegalArgumentException except) {
-			return new ResponseEntity<>(HttpStatus.CONFLICT);
-		} catch (final DataIntegrityViolationException|InvalidDataAccessApiUsageException except) {
-			// FIXME: This might well also catch exceptions when flight/row/seat isn't in DB
-			// TODO: Should it be UNAUTHORIZED instead?
-			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-		} catch (final Exception except) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+			@RequestBody final User user,
+			@RequestHeader(value = IdempotencyCache.HEADER, required = false) final String idempotencyKey) {
+		return handler.bookTicket(flight, row, seat, user, idempotencyKey);
+	}
+	/**
+	 * Reserve several seats on one flight for one user, all or nothing.
+	 * FIXME: Allow getting the user from headers (injected by the security layer)
+	 * @param flight the flight number of the flight
+	 * @param booking the user and the seats to book
+	 * @param idempotencyKey the client's key for this request, if any; a retry
+	 *                       with the same key gets the original response
+	 * @return the booking ID for each seat, in the order requested
+	 */
+	@PostMapping("/book/flights/{flight}/seats")
+	public ResponseEntity<List<String>> bookTickets(@PathVariable final int flight,
+			@RequestBody final GroupBooking booking,
+			@RequestHeader(value = IdempotencyCache.HEADER, required = false) final String idempotencyKey) {
+		return handler.bookTickets(flight, booking, idempotencyKey);
 	}
 	/**
 	 * Accept payment for a given reserved seat.
@@ -68,52 +79,31 @@ public class BookingController {
 	 * @param row the row number of the seat
 	 * @param seat the seat within the row
 	 * @param payment the price the customer has paid for the ticket
+	 * @param idempotencyKey the client's key for this request, if any; a retry
+	 *                       with the same key gets the original response
 	 */
 	@PutMapping("/pay/flights/{flight}/rows/{row}/seats/{seat}")
 	public ResponseEntity<Ticket> acceptPayment(@PathVariable final int flight,
 			@PathVariable final int row, @PathVariable final String seat,
-			@RequestBody final PaymentAmount payment) {
-		try {
-			service.acceptPayment(
-					service.getTicket(
-							new SeatLocation(service.getFlight(flight), row, seat)),
-					payment.getPrice());
-			return new ResponseEntity<>(HttpStatus.OK);
-		} catch (final IllegalStateException except) {
-			return new ResponseEntity<>(HttpStatus.CONFLICT);
-		} catch (final IllegalArgumentException except) {
-			return new ResponseEntity<>(HttpStatus.GONE);
-		} catch (final NoSuchElementException except) {
-			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-		} catch (final Exception except) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+			@RequestBody final PaymentAmount payment,
+			@RequestHeader(value = IdempotencyCache.HEADER, required = false) final String idempotencyKey) {
+		return handler.acceptPayment(flight, row, seat, payment, idempotencyKey);
 	}
 
 	/**
 	 * Accept payment for a given reserved seat.
 	 * @param bookingId the ID code of the booking
 	 * @param payment the price the customer has paid for the ticket
+	 * @param idempotencyKey the client's key for this request, if any; a retry
+	 *                       with the same key gets the original response
 	 */
 	@PutMapping("/pay/bookings/{bookingId}")
 	public ResponseEntity<Ticket> acceptPaymentForBookingId(
 			@PathVariable final String bookingId,
-			@RequestBody final PaymentAmount payment) {
-		try {
-			return new ResponseEntity<>(
-					service.acceptPayment(bookingId, payment.getPrice()),
-					HttpStatus.OK);
-		} catch (final IllegalArgumentException except) {
-			return new ResponseEntity<>(HttpStatus.GONE);
-		} catch (final IllegalStateException except) {
-			if (except.getMessage().contains("Uniqueness")) {
-				return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-			} else {
-				return new ResponseEntity<>(HttpStatus.CONFLICT);
-			}
-		} catch (final Exception except) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+			@RequestBody final PaymentAmount payment,
+			@RequestHeader(value = IdempotencyCache.HEADER, required = false) final String idempotencyKey) {
+		return handler.acceptPaymentForBookingId(bookingId, payment,
+				idempotencyKey);
 	}
 	/**
 	 * Cancel unpaid reservation for a given seat. TODO: Only the ticket-holder
@@ -126,17 +116,7 @@ public class BookingController {
 	@DeleteMapping("/book/flights/{flight}/rows/{row}/seats/{seat}")
 	public ResponseEntity<Object> cancelReservation(@PathVariable final int flight,
 			@PathVariable final int row, @PathVariable final String seat) {
-		try {
-			service.cancelPendingReservation(service.getTicket(
-					new SeatLocation(service.getFlight(flight), row, seat)));
-			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-		} catch (final NoSuchElementException except) {
-			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-		} catch (final IllegalArgumentException except) {
-			return new ResponseEntity<>(HttpStatus.CONFLICT);
-		} catch (final Exception except) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+		return handler.cancelReservation(flight, row, seat);
 	}
 
 	/**
@@ -148,14 +128,7 @@ public class BookingController {
 	@DeleteMapping("/book/bookings/{bookingId}")
 	public ResponseEntity<Object> cancelBookingById(
 			@PathVariable final String bookingId) {
-		try {
-			service.cancelPendingReservation(bookingId);
-			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-		} catch (final IllegalArgumentException except) {
-			return new ResponseEntity<>(HttpStatus.CONFLICT);
-		} catch (final Exception except) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+		return handler.cancelBookingById(bookingId);
 	}
 
 	/**
@@ -169,19 +142,7 @@ public class BookingController {
 	@PutMapping("/extend/flights/{flight}/rows/{row}/seats/{seat}")
 	public ResponseEntity<Object> extendTimeout(@PathVariable final int flight,
 			@PathVariable final int row, @PathVariable final String seat) {
-		try {
-			service.extendReservationTimeout(service.getTicket(
-					new SeatLocation(service.getFlight(flight), row, seat)));
-			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-		} catch (final NoSuchElementException except) {
-			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-		} catch (final IllegalArgumentException except) {
-			return new ResponseEntity<>(HttpStatus.GONE);
-		} catch (final IllegalStateException except) {
-			return new ResponseEntity<>(HttpStatus.CONFLICT);
-		} catch (final Exception except) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+		return handler.extendTimeout(flight, row, seat);
 	}
 
 	/**
@@ -192,20 +153,7 @@ public class BookingController {
 	 */
 	@PutMapping("/extend/bookings/{bookingId}")
 	public ResponseEntity<Object> extendTimeout(@PathVariable final String bookingId) {
-		try {
-			service.extendReservationTimeout(bookingId);
-			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-		} catch (final IllegalArgumentException except) {
-			return new ResponseEntity<>(HttpStatus.GONE);
-		} catch (final IllegalStateException except) {
-			if (except.getMessage().contains("Uniqueness")) {
-				return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-			} else {
-				return new ResponseEntity<>(HttpStatus.CONFLICT);
-			}
-		} catch (final Exception except) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+		return handler.extendTimeout(bookingId);
 	}
 
 	/**
@@ -216,17 +164,24 @@ public class BookingController {
 	 * @param seatId   the seat within the row
 	 */
 	@GetMapping("/details/flights/{flightId}/rows/{row}/seats/{seatId}")
-	public ResponseEntity<Ticket> getBookingDetails(@PathVariable final int flightId,
+	public ResponseEntity<TicketDetails> getBookingDetails(@PathVariable final int flightId,
 			@PathVariable final int row, @PathVariable final String seatId) {
-		try {
-			return new ResponseEntity<>(service.getTicket(
-					new SeatLocation(service.getFlight(flightId), row, seatId)),
-					HttpStatus.OK);
-		} catch (final NoSuchElementException except) {
-			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-		} catch (final Exception except) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+		return handler.getBookingDetails(flightId, row, seatId);
+	}
+
+	/**
+	 * Get the availability of every seat on a flight, in the dense text form
+	 * described in {@link FlightSeats#render(Integer)}. The response carries an
+	 * ETag, so clients polling a seat map that has not changed get a 304.
+	 *
+	 * @param flightId  the flight number of the flight
+	 * @param seatClass the class of seats to include, if not all of them
+	 */
+	@GetMapping(value = "/details/flights/{flightId}/seats",
+			produces = MediaType.TEXT_PLAIN_VALUE)
+	public ResponseEntity<String> getSeatMap(@PathVariable final int flightId,
+			@RequestParam(required = false) final Integer seatClass) {
+		return handler.getSeatMap(flightId, seatClass);
 	}
 
 	/**
@@ -234,17 +189,8 @@ public class BookingController {
 	 * @param bookingId the booking ID for the ticket.
 	 */
 	@GetMapping("/details/bookings/{bookingId}")
-	public ResponseEntity<Ticket> getBookingDetailsById(
+	public ResponseEntity<TicketDetails> getBookingDetailsById(
 			@PathVariable final String bookingId) {
-		try {
-			final Ticket ticket = service.getBooking(bookingId);
-			if (ticket == null) {
-				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-			} else {
-				return new ResponseEntity<>(ticket, HttpStatus.OK);
-			}
-		} catch (final Exception exception) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
-		}
+		return handler.getBookingDetailsById(bookingId);
 	}
 }
@@ -0,0 +1,361 @@
+package com.sst.utopia.booking.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.GroupBooking;
+import com.sst.utopia.booking.model.PaymentAmount;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.TicketDetails;
+import com.sst.utopia.booking.model.User;
+import com.sst.utopia.booking.service.BookingService;
+import com.sst.utopia.booking.service.FlightSeats;
+
+/**
+ * The blocking work of handling each booking request, shared by
+ * {@link BookingController} and {@link ReactiveBookingController} so that both
+ * turn the booking service's results and exceptions into the same responses.
+ * The controllers only map the endpoints to these methods and, in the reactive
+ * case, choose the threads to run them on.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+public class BookingRequestHandler {
+	/**
+	 * Service class used to handle requests.
+	 */
+	@Autowired
+	private BookingService service;
+	/**
+	 * Responses to recent requests that carried an idempotency key.
+	 */
+	@Autowired
+	private IdempotencyCache idempotency;
+
+	/**
+	 * Reserve a ticket for the given seat.
+	 * @param flight the flight number of the flight
+	 * @param row the row number of the seat
+	 * @param seat the seat within the row
+	 * @param user the user details
+	 * @param idempotencyKey the client's key for this request, if any
+	 * @return the new ticket, or the status explaining why there is none
+	 */
+	public ResponseEntity<Ticket> bookTicket(final int flight, final int row,
+			final String seat, final User user, final String idempotencyKey) {
+		return idempotency.execute(idempotencyKey, String.format(
+				"book %d %d %s %d", flight, row, seat, user.getId()), () -> {
+			try {
+				return new ResponseEntity<>(service.bookTicket(
+						new SeatLocation(service.getFlight(flight), row, seat), user),
+						HttpStatus.CREATED);
+			} catch (final IllegalArgumentException except) {
+				return new ResponseEntity<>(HttpStatus.CONFLICT);
+			} catch (final DataIntegrityViolationException|InvalidDataAccessApiUsageException except) {
+				// FIXME: This might well also catch exceptions when flight/row/seat isn't in DB
+				// TODO: Should it be UNAUTHORIZED instead?
+				return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+			} catch (final Exception except) {
+				return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+			}
+		});
+	}
+
+	/**
+	 * Reserve several seats on one flight for one user, all or nothing.
+	 * @param flight the flight number of the flight
+	 * @param booking the user and the seats to book
+	 * @param idempotencyKey the client's key for this request, if any
+	 * @return the booking ID for each seat, in the order requested, or the status
+	 *         explaining why there are none
+	 */
+	public ResponseEntity<List<String>> bookTickets(final int flight,
+			final GroupBooking booking, final String idempotencyKey) {
+		return idempotency.execute(idempotencyKey, fingerprint(flight, booking),
+				() -> {
+			try {
+				final Flight found = service.getFlight(flight);
+				if (found == null) {
+					return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+				} else if (!booking.isComplete()) {
+					return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+				}
+				final List<SeatLocation> seats = new ArrayList<>();
+				for (final GroupBooking.Seat seat : booking.getSeats()) {
+					seats.add(new SeatLocation(found, seat.getRow(), seat.getSeat()));
+				}
+				return new ResponseEntity<>(
+						service.bookTickets(seats, booking.getUser()),
+						HttpStatus.CREATED);
+			} catch (final IllegalArgumentException except) {
+				return new ResponseEntity<>(HttpStatus.CONFLICT);
+			} catch (final NoSuchElementException except) {
+				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			} catch (final DataIntegrityViolationException|InvalidDataAccessApiUsageException except) {
+				return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+			} catch (final Exception except) {
+				return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+			}
+		});
+	}
+
+	/**
+	 * @param flight the flight number of the flight
+	 * @param booking the user and the seats to book
+	 * @return a string identifying the request, for idempotency-key checks
+	 */
+	private static String fingerprint(final int flight,
+			final GroupBooking booking) {
+		final StringBuilder builder = new StringBuilder("book ").append(flight);
+		if (booking.getSeats() != null) {
+			for (final GroupBooking.Seat seat : booking.getSeats()) {
+				if (seat != null) {
+					builder.append(' ').append(seat.getRow()).append(seat.getSeat());
+				}
+			}
+		}
+		if (booking.getUser() != null) {
+			builder.append(" user ").append(booking.getUser().getId());
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Accept payment for a given reserved seat.
+	 * @param flight the flight number of the flight
+	 * @param row the row number of the seat
+	 * @param seat the seat within the row
+	 * @param payment the price the customer has paid for the ticket
+	 * @param idempotencyKey the client's key for this request, if any
+	 * @return the status of the payment
+	 */
+	public ResponseEntity<Ticket> acceptPayment(final int flight, final int row,
+			final String seat, final PaymentAmount payment,
+			final String idempotencyKey) {
+		return idempotency.execute(idempotencyKey, String.format(
+				"pay %d %d %s %d", flight, row, seat, payment.getPrice()), () -> {
+			try {
+				service.acceptPayment(
+						service.getTicket(
+								new SeatLocation(service.getFlight(flight), row, seat)),
+						payment.getPrice());
+				return new ResponseEntity<>(HttpStatus.OK);
+			} catch (final IllegalStateException except) {
+				return new ResponseEntity<>(HttpStatus.CONFLICT);
+			} catch (final IllegalArgumentException except) {
+				return new ResponseEntity<>(HttpStatus.GONE);
+			} catch (final NoSuchElementException except) {
+				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			} catch (final OptimisticLockingFailureException except) {
+				// Still losing to concurrent changes after retrying.
+				return new ResponseEntity<>(HttpStatus.CONFLICT);
+			} catch (final Exception except) {
+				return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+			}
+		});
+	}
+
+	/**
+	 * Accept payment for a given reserved seat.
+	 * @param bookingId the ID code of the booking
+	 * @param payment the price the customer has paid for the ticket
+	 * @param idempotencyKey the client's key for this request, if any
+	 * @return the paid-for ticket, or the status explaining why it was not paid
+	 *         for
+	 */
+	public ResponseEntity<Ticket> acceptPaymentForBookingId(
+			final String bookingId, final PaymentAmount payment,
+			final String idempotencyKey) {
+		return idempotency.execute(idempotencyKey,
+				String.format("pay %s %d", bookingId, payment.getPrice()), () -> {
+			try {
+				return new ResponseEntity<>(
+						service.acceptPayment(bookingId, payment.getPrice()),
+						HttpStatus.OK);
+			} catch (final IllegalArgumentException except) {
+				return new ResponseEntity<>(HttpStatus.GONE);
+			} catch (final IllegalStateException except) {
+				if (except.getMessage().contains("Uniqueness")) {
+					return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+				} else {
+					return new ResponseEntity<>(HttpStatus.CONFLICT);
+				}
+			} catch (final OptimisticLockingFailureException except) {
+				// Still losing to concurrent changes after retrying.
+				return new ResponseEntity<>(HttpStatus.CONFLICT);
+			} catch (final Exception except) {
+				return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+			}
+		});
+	}
+
+	/**
+	 * Cancel unpaid reservation for a given seat.
+	 * @param flight the flight number of the flight
+	 * @param row    the row number of the seat
+	 * @param seat   the seat within the row
+	 * @return the status of the cancellation
+	 */
+	public ResponseEntity<Object> cancelReservation(final int flight,
+			final int row, final String seat) {
+		try {
+			service.cancelPendingReservation(service.getTicket(
+					new SeatLocation(service.getFlight(flight), row, seat)));
+			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+		} catch (final NoSuchElementException except) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		} catch (final IllegalArgumentException except) {
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		} catch (final OptimisticLockingFailureException except) {
+			// Still losing to concurrent changes after retrying.
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Cancel unpaid reservation for a given booking-ID.
+	 * @param bookingId the booking-ID for the seat
+	 * @return the status of the cancellation
+	 */
+	public ResponseEntity<Object> cancelBookingById(final String bookingId) {
+		try {
+			service.cancelPendingReservation(bookingId);
+			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+		} catch (final IllegalArgumentException except) {
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		} catch (final OptimisticLockingFailureException except) {
+			// Still losing to concurrent changes after retrying.
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Extend the reservation timeout for the given unpaid booking.
+	 * @param flight the flight number of the flight
+	 * @param row    the row number of the seat
+	 * @param seat   the seat within the row
+	 * @return the status of the extension
+	 */
+	public ResponseEntity<Object> extendTimeout(final int flight, final int row,
+			final String seat) {
+		try {
+			service.extendReservationTimeout(service.getTicket(
+					new SeatLocation(service.getFlight(flight), row, seat)));
+			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+		} catch (final NoSuchElementException except) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		} catch (final IllegalArgumentException except) {
+			return new ResponseEntity<>(HttpStatus.GONE);
+		} catch (final IllegalStateException except) {
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		} catch (final OptimisticLockingFailureException except) {
+			// Still losing to concurrent changes after retrying.
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Extend the reservation timeout for the given unpaid booking.
+	 * @param bookingId the booking-ID for the seat
+	 * @return the status of the extension
+	 */
+	public ResponseEntity<Object> extendTimeout(final String bookingId) {
+		try {
+			service.extendReservationTimeout(bookingId);
+			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+		} catch (final IllegalArgumentException except) {
+			return new ResponseEntity<>(HttpStatus.GONE);
+		} catch (final IllegalStateException except) {
+			if (except.getMessage().contains("Uniqueness")) {
+				return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+			} else {
+				return new ResponseEntity<>(HttpStatus.CONFLICT);
+			}
+		} catch (final OptimisticLockingFailureException except) {
+			// Still losing to concurrent changes after retrying.
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Get the details of a ticket.
+	 * @param flightId the flight number of the flight
+	 * @param row    the row number of the seat
+	 * @param seatId   the seat within the row
+	 * @return the details of the ticket
+	 */
+	public ResponseEntity<TicketDetails> getBookingDetails(final int flightId,
+			final int row, final String seatId) {
+		try {
+			return new ResponseEntity<>(service.getTicketDetails(
+					new SeatLocation(service.getFlight(flightId), row, seatId)),
+					HttpStatus.OK);
+		} catch (final NoSuchElementException except) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Get the availability of every seat on a flight, in the dense text form
+	 * described in {@link FlightSeats#render(Integer)}, with an ETag.
+	 * @param flightId  the flight number of the flight
+	 * @param seatClass the class of seats to include, if not all of them
+	 * @return the seat map
+	 */
+	public ResponseEntity<String> getSeatMap(final int flightId,
+			final Integer seatClass) {
+		try {
+			final Flight flight = service.getFlight(flightId);
+			if (flight == null) {
+				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			}
+			final String seatMap = service.getSeatMap(flight).render(seatClass);
+			return ResponseEntity.ok()
+					.eTag(String.format("%d-%x", flightId, seatMap.hashCode()))
+					.body(seatMap);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Get the details of a ticket by its booking ID.
+	 * @param bookingId the booking ID for the ticket.
+	 * @return the details of the ticket
+	 */
+	public ResponseEntity<TicketDetails> getBookingDetailsById(
+			final String bookingId) {
+		try {
+			final TicketDetails ticket = service.getBookingDetails(bookingId);
+			if (ticket == null) {
+				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			} else {
+				return new ResponseEntity<>(ticket, HttpStatus.OK);
+			}
+		} catch (final Exception exception) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.sst.utopia.booking.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.sst.utopia.booking.service.FlightCache;
+
+/**
+ * Controller to let the flights service (or an operator) see how the caches of
+ * flight and airport reference data are doing, and to clear them when the
+ * schedule changes rather than waiting for the entries to expire. Used in both
+ * servlet and reactive modes.
+ *
+ * @author Jonathan Lovelace
+ */
+@RestController
+@RequestMapping("/booking/admin/caches")
+public class CacheAdminController {
+	/**
+	 * The cache of flights, which also manages the second-level cache beneath it.
+	 */
+	@Autowired
+	private FlightCache flightCache;
+
+	/**
+	 * @return hit, miss, and put counts, and sizes, for each cache, by name
+	 */
+	@GetMapping("")
+	public ResponseEntity<Map<String, Map<String, Long>>> getStatistics() {
+		try {
+			return new ResponseEntity<>(flightCache.getStatistics(), HttpStatus.OK);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Forget every cached flight and airport, so the next request for each
+	 * reloads it from the database.
+	 */
+	@DeleteMapping("/flights")
+	public ResponseEntity<Void> invalidateFlights() {
+		try {
+			flightCache.invalidateAll();
+			return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+}
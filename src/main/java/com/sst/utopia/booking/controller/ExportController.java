@@ -0,0 +1,178 @@
+package com.sst.utopia.booking.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.service.BookingService;
+import com.sst.utopia.booking.service.TicketExportService;
+import com.sst.utopia.booking.service.TicketExportService.Format;
+
+/**
+ * Controller to let the revenue and manifest jobs export tickets in bulk,
+ * rather than asking about them one seat at a time. Responses are streamed
+ * (with chunked transfer encoding) as the tickets are read, off the request
+ * threads, and only a few exports may run at once so that they do not crowd
+ * out booking traffic. Used only when the service runs as a servlet
+ * application.
+ *
+ * @author Jonathan Lovelace
+ */
+@RestController
+@RequestMapping("/booking/admin/export")
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class ExportController {
+	/**
+	 * The media type of newline-delimited JSON.
+	 */
+	private static final MediaType NDJSON = MediaType.valueOf("application/x-ndjson");
+	/**
+	 * The media type of CSV.
+	 */
+	private static final MediaType CSV = MediaType.valueOf("text/csv");
+
+	/**
+	 * Service class used to find flights.
+	 */
+	@Autowired
+	private BookingService bookingService;
+	/**
+	 * Service class used to export tickets.
+	 */
+	@Autowired
+	private TicketExportService exportService;
+	/**
+	 * Permits for the exports that may run at once.
+	 */
+	private final Semaphore exports;
+
+	/**
+	 * @param maxConcurrent how many exports may run at once
+	 */
+	public ExportController(
+			@Value("${utopia.export.max-concurrent}") final int maxConcurrent) {
+		exports = new Semaphore(maxConcurrent);
+	}
+
+	/**
+	 * Export every ticket on a flight.
+	 * @param flight  the flight number of the flight
+	 * @param format  "ndjson" (the default) or "csv"
+	 * @param request the request being handled
+	 * @return the tickets, streamed
+	 */
+	@GetMapping("/flights/{flight}/tickets")
+	public ResponseEntity<StreamingResponseBody> exportFlight(
+			@PathVariable final int flight,
+			@RequestParam(defaultValue = "ndjson") final String format,
+			final NativeWebRequest request) {
+		final Flight found = bookingService.getFlight(flight);
+		if (found == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return stream(request, format,
+				(parsed, out) -> exportService.exportFlight(found, parsed, out));
+	}
+
+	/**
+	 * Export every ticket on the flights departing in a range of time.
+	 * @param from    the start of the range, as an ISO date and time
+	 * @param to      the end of the range (exclusive), as an ISO date and time
+	 * @param format  "ndjson" (the default) or "csv"
+	 * @param request the request being handled
+	 * @return the tickets, streamed
+	 */
+	@GetMapping("/tickets")
+	public ResponseEntity<StreamingResponseBody> exportDepartures(
+			@RequestParam @DateTimeFormat(iso = ISO.DATE_TIME) final LocalDateTime from,
+			@RequestParam @DateTimeFormat(iso = ISO.DATE_TIME) final LocalDateTime to,
+			@RequestParam(defaultValue = "ndjson") final String format,
+			final NativeWebRequest request) {
+		return stream(request, format, (parsed, out) -> exportService
+				.exportDepartures(from, to, parsed, out));
+	}
+
+	/**
+	 * An export, given the format to write in and where to write.
+	 */
+	@FunctionalInterface
+	private interface Export {
+		/**
+		 * @param format the format to write in
+		 * @param out    where to write
+		 * @throws IOException on I/O error writing
+		 */
+		void run(Format format, OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Start streaming an export, if the format is known and a permit is free.
+	 * The permit is given back when the export finishes or, since the body may
+	 * never run (if the request times out or fails before it starts, or the
+	 * executor refuses it), when the asynchronous request completes, whichever
+	 * comes first.
+	 * @param request the request being handled
+	 * @param format  the requested format
+	 * @param export  the export
+	 * @return the response
+	 */
+	private ResponseEntity<StreamingResponseBody> stream(
+			final NativeWebRequest request, final String format,
+			final Export export) {
+		final Format parsed;
+		try {
+			parsed = Format.valueOf(format.toUpperCase());
+		} catch (final IllegalArgumentException except) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (!exports.tryAcquire()) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		final AtomicBoolean held = new AtomicBoolean(true);
+		final Runnable release = () -> {
+			if (held.getAndSet(false)) {
+				exports.release();
+			}
+		};
+		WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(
+				ExportController.class.getName(), new CallableProcessingInterceptor() {
+					@Override
+					public <T> void afterCompletion(final NativeWebRequest completed,
+							final Callable<T> task) {
+						release.run();
+					}
+				});
+		final StreamingResponseBody body = out -> {
+			try {
+				export.run(parsed, out);
+			} finally {
+				release.run();
+			}
+		};
+		return ResponseEntity.ok()
+				.contentType(parsed == Format.CSV ? CSV : NDJSON).body(body);
+	}
+}
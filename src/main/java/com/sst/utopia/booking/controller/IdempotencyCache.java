@@ -0,0 +1,139 @@
+package com.sst.utopia.booking.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * A bounded, in-memory cache of the responses to requests that carried an
+ * "Idempotency-Key" header, so that a client retrying such a request (after a
+ * timeout, say) gets the original response instead of, for example, a 409 for
+ * the seat it just booked, and without the service going back to the
+ * database.
+ *
+ * A retry that arrives while the original request is still being handled
+ * waits for, and then shares, its response. Responses with 5xx status codes
+ * are not kept, so those requests can be retried for real. Reusing a key for a
+ * different request is rejected with 422 (Unprocessable Entity).
+ *
+ * The cache is local to each instance of the service, so a retry routed to a
+ * different instance is handled as a new request; the conditional updates in
+ * the booking service keep that safe, if not as friendly.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+public class IdempotencyCache {
+	/**
+	 * The request header carrying the idempotency key.
+	 */
+	public static final String HEADER = "Idempotency-Key";
+
+	/**
+	 * The response header set on responses replayed from the cache.
+	 */
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+	/**
+	 * The request a key was first used for, and its response (once there is
+	 * one).
+	 */
+	private static final class Entry {
+		/**
+		 * A string identifying the request.
+		 */
+		private final String fingerprint;
+		/**
+		 * The response to the request.
+		 */
+		private final CompletableFuture<ResponseEntity<?>> response =
+				new CompletableFuture<>();
+
+		/**
+		 * @param fingerprint a string identifying the request
+		 */
+		Entry(final String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	/**
+	 * The entries, by idempotency key.
+	 */
+	private final ConcurrentMap<String, Entry> entries;
+
+	/**
+	 * @param registry    registry to publish cache metrics in
+	 * @param maximumSize the most responses to keep
+	 * @param ttlSeconds  how long to keep each response
+	 */
+	@Autowired
+	public IdempotencyCache(final MeterRegistry registry,
+			@Value("${utopia.idempotency.maximum-size}") final long maximumSize,
+			@Value("${utopia.idempotency.ttl-seconds}") final long ttlSeconds) {
+		final Cache<String, Entry> cache = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(registry, cache, "idempotency");
+		entries = cache.asMap();
+	}
+
+	/**
+	 * Handle a request, or answer it from the cache if it is a retry.
+	 *
+	 * @param <T>         the type of the response body
+	 * @param key         the request's idempotency key, or null if it has none
+	 * @param fingerprint a string identifying the request, to detect a key being
+	 *                    reused for a different request
+	 * @param handler     what to do to handle the request the first time; it
+	 *                    should report failures as status codes rather than
+	 *                    throwing
+	 * @return the response
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> ResponseEntity<T> execute(final String key,
+			final String fingerprint, final Supplier<ResponseEntity<T>> handler) {
+		if (key == null) {
+			return handler.get();
+		}
+		final Entry mine = new Entry(fingerprint);
+		final Entry existing = entries.putIfAbsent(key, mine);
+		if (existing == null) {
+			final ResponseEntity<T> response;
+			try {
+				response = handler.get();
+			} catch (final RuntimeException except) {
+				entries.remove(key, mine);
+				mine.response.completeExceptionally(except);
+				throw except;
+			}
+			if (response.getStatusCode().is5xxServerError()) {
+				entries.remove(key, mine);
+			}
+			mine.response.complete(response);
+			return response;
+		} else if (!existing.fingerprint.equals(fingerprint)) {
+			return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+		} else {
+			final ResponseEntity<T> original =
+					(ResponseEntity<T>) existing.response.join();
+			return ResponseEntity.status(original.getStatusCode())
+					.headers(original.getHeaders()).header(REPLAYED_HEADER, "true")
+					.body(original.getBody());
+		}
+	}
+}
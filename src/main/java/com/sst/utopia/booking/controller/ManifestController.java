@@ -0,0 +1,73 @@
+package com.sst.utopia.booking.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.FlightManifest;
+import com.sst.utopia.booking.model.SeatClassOccupancy;
+import com.sst.utopia.booking.service.BookingService;
+
+/**
+ * Controller to let operations staff see how full each flight is, and how much
+ * revenue it has brought in, without pulling every ticket. Used only when the
+ * service runs as a servlet application, since a flight's counts are loaded
+ * from the database on first request.
+ *
+ * @author Jonathan Lovelace
+ */
+@RestController
+@RequestMapping("/booking/admin/manifests")
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class ManifestController {
+	/**
+	 * Service class used to handle requests.
+	 */
+	@Autowired
+	private BookingService service;
+
+	/**
+	 * Get the occupancy of a flight.
+	 * @param flight the flight number of the flight
+	 * @return how many of its seats of each class are free, held, and paid for,
+	 *         and the revenue from them
+	 */
+	@GetMapping("/flights/{flight}")
+	public ResponseEntity<FlightManifest> getManifest(
+			@PathVariable final int flight) {
+		try {
+			final Flight found = service.getFlight(flight);
+			if (found == null) {
+				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			}
+			return new ResponseEntity<>(service.getManifest(found), HttpStatus.OK);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Recount the occupancy of every flight asked about so far from the database
+	 * now, rather than waiting for the next scheduled reconciliation.
+	 * @return how much the running counts of each class of seat that disagreed
+	 *         with the database exceeded it
+	 */
+	@PostMapping("/reconcile")
+	public ResponseEntity<List<SeatClassOccupancy>> reconcile() {
+		try {
+			return new ResponseEntity<>(service.reconcileManifests(), HttpStatus.OK);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.sst.utopia.booking.controller;
+
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.sst.utopia.booking.model.ProvisioningReport;
+import com.sst.utopia.booking.model.SeatLayout;
+import com.sst.utopia.booking.service.SeatProvisioningService;
+
+/**
+ * Controller to let the flights service create the seats for new flights. Used
+ * only when the service runs as a servlet application, since a schedule is
+ * read as a blocking stream straight from the request.
+ *
+ * @author Jonathan Lovelace
+ */
+@RestController
+@RequestMapping("/booking/admin/flights")
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class ProvisioningController {
+	/**
+	 * Service class used to handle requests.
+	 */
+	@Autowired
+	private SeatProvisioningService service;
+
+	/**
+	 * Create the seats on a flight.
+	 * @param flight the flight number of the flight
+	 * @param layout the layout of the aircraft's seats
+	 * @return how many seats were created
+	 */
+	@PostMapping("/{flight}/seats")
+	public ResponseEntity<Integer> provisionFlight(@PathVariable final int flight,
+			@RequestBody final SeatLayout layout) {
+		try {
+			return new ResponseEntity<>(service.provision(flight, layout),
+					HttpStatus.CREATED);
+		} catch (final NoSuchElementException except) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		} catch (final IllegalArgumentException except) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		} catch (final IllegalStateException except) {
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * Create the seats on every flight in a schedule, given as newline-delimited
+	 * JSON objects each with a "flight" number and a "layout". The schedule is
+	 * read and provisioned as it arrives, one flight at a time.
+	 * @param schedule the body of the request
+	 * @return what was done
+	 */
+	@PostMapping("/seats")
+	public ResponseEntity<ProvisioningReport> provisionSchedule(
+			final InputStream schedule) {
+		try {
+			return new ResponseEntity<>(service.provisionSchedule(schedule),
+					HttpStatus.OK);
+		} catch (final IllegalArgumentException except) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		} catch (final Exception except) {
+			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+}
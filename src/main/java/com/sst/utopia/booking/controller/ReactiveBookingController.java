@@ -0,0 +1,280 @@
+package com.sst.utopia.booking.controller;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.sst.utopia.booking.model.GroupBooking;
+import com.sst.utopia.booking.model.PaymentAmount;
+import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.TicketDetails;
+import com.sst.utopia.booking.model.User;
+import com.sst.utopia.booking.service.BookingService;
+import com.sst.utopia.booking.service.FlightSeats;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The WebFlux counterpart of {@link BookingController}, used instead of it when
+ * the service is deployed with "spring.main.web-application-type=reactive": it
+ * presents the same booking (single and group), payment, cancellation,
+ * extension, details, and seat-map endpoints, handled by the same
+ * {@link BookingRequestHandler} so the responses are the same, but a request
+ * waiting on the database holds no thread. The blocking work (all of it in
+ * {@link BookingService}) runs on a small, fixed pool sized to match the
+ * database connection pool; requests beyond that wait in a bounded queue for
+ * it, and once that is full are turned away with 503 (Service Unavailable).
+ *
+ * @author Jonathan Lovelace
+ */
+@RestController
+@RequestMapping("/booking")
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveBookingController {
+	/**
+	 * The handling of each request, shared with the servlet controller.
+	 */
+	@Autowired
+	private BookingRequestHandler handler;
+	/**
+	 * The threads the blocking work of handling requests runs on.
+	 */
+	private final ExecutorService databaseThreads;
+	/**
+	 * The scheduler wrapping those threads.
+	 */
+	private final Scheduler scheduler;
+
+	/**
+	 * @param threads   how many threads to run blocking work on; more than there
+	 *                  are database connections does no good
+	 * @param queueSize how many requests may wait for one of those threads
+	 *                  before more are turned away
+	 */
+	public ReactiveBookingController(
+			@Value("${utopia.reactive.database-threads}") final int threads,
+			@Value("${utopia.reactive.queue-size}") final int queueSize) {
+		final AtomicInteger count = new AtomicInteger();
+		databaseThreads = new ThreadPoolExecutor(threads, threads, 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), task -> {
+					final Thread thread = new Thread(task,
+							"booking-db-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+		scheduler = Schedulers.fromExecutorService(databaseThreads);
+	}
+
+	/**
+	 * Stop the threads running blocking work when the application context
+	 * closes.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		scheduler.dispose();
+		databaseThreads.shutdown();
+	}
+
+	/**
+	 * @param <T>     the type of the response body
+	 * @param handler blocking code handling a request
+	 * @return the response it produces, once it has run on one of the threads
+	 *         for blocking work, or 503 if too many requests are already waiting
+	 *         for them
+	 */
+	private <T> Mono<ResponseEntity<T>> blocking(
+			final Callable<ResponseEntity<T>> handler) {
+		return Mono.fromCallable(handler).subscribeOn(scheduler)
+				.onErrorResume(RejectedExecutionException.class, except -> Mono
+						.just(new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE)));
+	}
+
+	/**
+	 * Reserve a ticket for the given seat.
+	 * FIXME: Allow getting the user from headers (injected by the security layer)
+	 * @param flight the flight number of the flight
+	 * @param row the row number of the seat
+	 * @param seat the seat within the row
+	 * @param user the user details
+	 * @param idempotencyKey the client's key for this request, if any; a retry
+	 *                       with the same key gets the original response
+	 */
+	@PostMapping("/book/flights/{flight}/rows/{row}/seats/{seat}")
+	public Mono<ResponseEntity<Ticket>> bookTicket(@PathVariable final int flight,
+			@PathVariable final int row, @PathVariable final String seat,
+			@RequestBody final User user,
+			@RequestHeader(value = IdempotencyCache.HEADER, required = false) final String idempotencyKey) {
+		return blocking(() -> handler.bookTicket(flight, row, seat, user,
+				idempotencyKey));
+	}
+
+	/**
+	 * Reserve several seats on one flight for one user, all or nothing.
+	 * FIXME: Allow getting the user from headers (injected by the security layer)
+	 * @param flight the flight number of the flight
+	 * @param booking the user and the seats to book
+	 * @param idempotencyKey the client's key for this request, if any; a retry
+	 *                       with the same key gets the original response
+	 * @return the booking ID for each seat, in the order requested
+	 */
+	@PostMapping("/book/flights/{flight}/seats")
+	public Mono<ResponseEntity<List<String>>> bookTickets(
+			@PathVariable final int flight, @RequestBody final GroupBooking booking,
+			@RequestHeader(value = IdempotencyCache.HEADER, required = false) final String idempotencyKey) {
+		return blocking(() -> handler.bookTickets(flight, booking, idempotencyKey));
+	}
+
+	/**
+	 * Accept payment for a given reserved seat.
+	 * @param flight the flight number of the flight
+	 * @param row the row number of the seat
+	 * @param seat the seat within the row
+	 * @param payment the price the customer has paid for the ticket
+	 * @param idempotencyKey the client's key for this request, if any; a retry
+	 *                       with the same key gets the original response
+	 */
+	@PutMapping("/pay/flights/{flight}/rows/{row}/seats/{seat}")
+	public Mono<ResponseEntity<Ticket>> acceptPayment(@PathVariable final int flight,
+			@PathVariable final int row, @PathVariable final String seat,
+			@RequestBody final PaymentAmount payment,
+			@RequestHeader(value = IdempotencyCache.HEADER, required = false) final String idempotencyKey) {
+		return blocking(() -> handler.acceptPayment(flight, row, seat, payment,
+				idempotencyKey));
+	}
+
+	/**
+	 * Accept payment for a given reserved seat.
+	 * @param bookingId the ID code of the booking
+	 * @param payment the price the customer has paid for the ticket
+	 * @param idempotencyKey the client's key for this request, if any; a retry
+	 *                       with the same key gets the original response
+	 */
+	@PutMapping("/pay/bookings/{bookingId}")
+	public Mono<ResponseEntity<Ticket>> acceptPaymentForBookingId(
+			@PathVariable final String bookingId,
+			@RequestBody final PaymentAmount payment,
+			@RequestHeader(value = IdempotencyCache.HEADER, required = false) final String idempotencyKey) {
+		return blocking(() -> handler.acceptPaymentForBookingId(bookingId, payment,
+				idempotencyKey));
+	}
+
+	/**
+	 * Cancel unpaid reservation for a given seat. TODO: Only the ticket-holder
+	 * should be able to cancel it
+	 *
+	 * @param flight the flight number of the flight
+	 * @param row    the row number of the seat
+	 * @param seat   the seat within the row
+	 */
+	@DeleteMapping("/book/flights/{flight}/rows/{row}/seats/{seat}")
+	public Mono<ResponseEntity<Object>> cancelReservation(
+			@PathVariable final int flight, @PathVariable final int row,
+			@PathVariable final String seat) {
+		return blocking(() -> handler.cancelReservation(flight, row, seat));
+	}
+
+	/**
+	 * Cancel unpaid reservation for a given booking-ID. TODO: only the ticket
+	 * holder should be able to cancel it
+	 *
+	 * @param bookingId the booking-ID for the seat
+	 */
+	@DeleteMapping("/book/bookings/{bookingId}")
+	public Mono<ResponseEntity<Object>> cancelBookingById(
+			@PathVariable final String bookingId) {
+		return blocking(() -> handler.cancelBookingById(bookingId));
+	}
+
+	/**
+	 * Extend the reservation timeout for the given unpaid booking. TODO: limit the
+	 * number of times this is allowed
+	 *
+	 * @param flight the flight number of the flight
+	 * @param row    the row number of the seat
+	 * @param seat   the seat within the row
+	 */
+	@PutMapping("/extend/flights/{flight}/rows/{row}/seats/{seat}")
+	public Mono<ResponseEntity<Object>> extendTimeout(@PathVariable final int flight,
+			@PathVariable final int row, @PathVariable final String seat) {
+		return blocking(() -> handler.extendTimeout(flight, row, seat));
+	}
+
+	/**
+	 * Extend the reservation timeout for the given unpaid booking. TODO: limit the
+	 * number of times this is allowed
+	 *
+	 * @param bookingId the booking-ID for the seat
+	 */
+	@PutMapping("/extend/bookings/{bookingId}")
+	public Mono<ResponseEntity<Object>> extendTimeout(
+			@PathVariable final String bookingId) {
+		return blocking(() -> handler.extendTimeout(bookingId));
+	}
+
+	/**
+	 * Get the details of a ticket.
+	 *
+	 * @param flightId the flight number of the flight
+	 * @param row    the row number of the seat
+	 * @param seatId   the seat within the row
+	 */
+	@GetMapping("/details/flights/{flightId}/rows/{row}/seats/{seatId}")
+	public Mono<ResponseEntity<TicketDetails>> getBookingDetails(
+			@PathVariable final int flightId, @PathVariable final int row,
+			@PathVariable final String seatId) {
+		return blocking(() -> handler.getBookingDetails(flightId, row, seatId));
+	}
+
+	/**
+	 * Get the availability of every seat on a flight, in the dense text form
+	 * described in {@link FlightSeats#render(Integer)}. The response carries an
+	 * ETag, so clients polling a seat map that has not changed get a 304.
+	 *
+	 * @param flightId  the flight number of the flight
+	 * @param seatClass the class of seats to include, if not all of them
+	 */
+	@GetMapping(value = "/details/flights/{flightId}/seats",
+			produces = MediaType.TEXT_PLAIN_VALUE)
+	public Mono<ResponseEntity<String>> getSeatMap(
+			@PathVariable final int flightId,
+			@RequestParam(required = false) final Integer seatClass) {
+		return blocking(() -> handler.getSeatMap(flightId, seatClass));
+	}
+
+	/**
+	 * Get the details of a ticket by its booking ID.
+	 * @param bookingId the booking ID for the ticket.
+	 */
+	@GetMapping("/details/bookings/{bookingId}")
+	public Mono<ResponseEntity<TicketDetails>> getBookingDetailsById(
+			@PathVariable final String bookingId) {
+		return blocking(() -> handler.getBookingDetailsById(bookingId));
+	}
+}
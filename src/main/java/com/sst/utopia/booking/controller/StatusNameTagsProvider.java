@@ -0,0 +1,53 @@
+package com.sst.utopia.booking.controller;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.actuate.metrics.web.servlet.DefaultWebMvcTagsProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Tags the per-request metrics Spring Boot publishes ("http.server.requests")
+ * with the name of the response status (CREATED, CONFLICT, GONE, and so on) as
+ * well as the usual method, URI, numeric status, and exception, since the
+ * controller reports nearly every outcome as a status code rather than an
+ * exception.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class StatusNameTagsProvider extends DefaultWebMvcTagsProvider {
+	/**
+	 * @param request   the request
+	 * @param response  the response
+	 * @param handler   the handler of the request, if any
+	 * @param exception the exception thrown while handling the request, if any
+	 * @return the tags for the request's metrics
+	 */
+	@Override
+	public Iterable<Tag> getTags(final HttpServletRequest request,
+			final HttpServletResponse response, final Object handler,
+			final Throwable exception) {
+		return Tags.of(super.getTags(request, response, handler, exception))
+				.and("result", statusName(response));
+	}
+
+	/**
+	 * @param response a response, possibly null
+	 * @return the name of its status, or "UNKNOWN" if it is not a standard one
+	 */
+	private static String statusName(final HttpServletResponse response) {
+		if (response == null) {
+			return "UNKNOWN";
+		}
+		final HttpStatus status = HttpStatus.resolve(response.getStatus());
+		return status == null ? "UNKNOWN" : status.name();
+	}
+}
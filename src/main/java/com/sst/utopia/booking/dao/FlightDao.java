@@ -2,7 +2,11 @@ package com.sst.utopia.booking.dao;
 
 import java.util.List;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import com.sst.utopia.booking.model.Flight;
@@ -15,9 +19,23 @@ import com.sst.utopia.booking.model.Flight;
 @Repository
 public interface FlightDao extends JpaRepository<Flight, Integer> {
 	/**
-	 * Get the flight, if any, with the given flight number.
+	 * The second-level cache region holding the results of
+	 * {@link #findByFlightNumber(int)}.
+	 */
+	String FLIGHTS_BY_NUMBER_REGION = "flights-by-number";
+
+	/**
+	 * Get the flight, if any, with the given flight number, with its airports
+	 * fetched in the same query, since it is cached and shown to clients. The
+	 * results are kept in the query cache; note that on a hit there the airports
+	 * are not fetched, and must be loaded (from the cache) before the session
+	 * closes.
 	 * @param flightNumber the flight number
 	 * @return the flight with that number, if any
 	 */
+	@EntityGraph(attributePaths = { "departureAirport", "destination" })
+	@QueryHints({ @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+			@QueryHint(name = "org.hibernate.cacheRegion",
+					value = FLIGHTS_BY_NUMBER_REGION) })
 	List<Flight> findByFlightNumber(int flightNumber);
 }
@@ -0,0 +1,121 @@
+package com.sst.utopia.booking.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLayout;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.User;
+
+/**
+ * A Data Access Object for operations on the table of tickets/seats that touch
+ * many rows at once, and so go straight to JDBC batches rather than through
+ * JPA. Callers must run these within a transaction, and must not rely on any
+ * tickets already loaded into the persistence context reflecting their effects.
+ *
+ * @author Jonathan Lovelace
+ */
+@Repository
+public class TicketBatchDao {
+	/**
+	 * Conditionally reserve one seat; see {@link TicketDao#claimSeat}.
+	 */
+	private static final String CLAIM_SEAT = "UPDATE tbl_tickets "
+			+ "SET reserver = ?, reservationTimeout = ?, bookingId = ?, "
+			+ "version = version + 1 "
+			+ "WHERE id = ? AND reserver IS NULL";
+
+	/**
+	 * Create one (unreserved) seat.
+	 */
+	private static final String INSERT_SEAT = "INSERT INTO tbl_tickets "
+			+ "(id, flight, seatRow, seat, class, version) VALUES (?, ?, ?, ?, ?, 0)";
+
+	/**
+	 * JDBC helper.
+	 */
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * Reserve each of the given seats for the given user if nobody has reserved
+	 * it yet, in a single JDBC batch.
+	 *
+	 * @param seats      the seats to reserve
+	 * @param reserver   who to reserve them for
+	 * @param timeout    when the reservations should expire if not paid for
+	 * @param bookingIds the booking ID for each seat, in the same order
+	 * @return the update count for each seat, in the same order: 1 if claimed, 0
+	 *         if not, or {@link java.sql.Statement#SUCCESS_NO_INFO} if the driver
+	 *         did not say
+	 */
+	public int[] claimSeats(final List<SeatLocation> seats, final User reserver,
+			final LocalDateTime timeout, final List<String> bookingIds) {
+		final Timestamp expiry = Timestamp.valueOf(timeout);
+		return jdbcTemplate.batchUpdate(CLAIM_SEAT,
+				new BatchPreparedStatementSetter() {
+					@Override
+					public void setValues(final PreparedStatement statement,
+							final int index) throws SQLException {
+						statement.setInt(1, reserver.getId());
+						statement.setTimestamp(2, expiry);
+						statement.setString(3, bookingIds.get(index));
+						statement.setLong(4, seats.get(index).getKey());
+					}
+
+					@Override
+					public int getBatchSize() {
+						return seats.size();
+					}
+				});
+	}
+
+	/**
+	 * Create every seat in the given layout on the given flight, unreserved, in
+	 * JDBC batches of the given size. Only one batch is held in memory at a
+	 * time. With MySQL's rewriteBatchedStatements each batch is sent as a single
+	 * multi-row INSERT.
+	 *
+	 * @param flight    the flight
+	 * @param layout    the layout of its seats, which must be valid
+	 * @param batchSize how many seats to insert per batch
+	 * @return how many seats were created
+	 * @throws org.springframework.dao.DataIntegrityViolationException if any
+	 *         of the seats already exists
+	 */
+	public int insertSeats(final Flight flight, final SeatLayout layout,
+			final int batchSize) {
+		final List<Object[]> batch = new ArrayList<>(batchSize);
+		int count = 0;
+		for (final SeatLayout.Band band : layout.getBands()) {
+			for (int row = band.getFirstRow(); row <= band.getLastRow(); row++) {
+				for (final char letter : band.getLetters().toCharArray()) {
+					final String seat = String.valueOf(letter);
+					batch.add(new Object[] {
+							SeatLocation.key(flight.getId(), row, seat), flight.getId(),
+							row, seat, band.getSeatClass() });
+					if (batch.size() == batchSize) {
+						jdbcTemplate.batchUpdate(INSERT_SEAT, batch);
+						count += batch.size();
+						batch.clear();
+					}
+				}
+			}
+		}
+		if (!batch.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_SEAT, batch);
+			count += batch.size();
+		}
+		return count;
+	}
+}
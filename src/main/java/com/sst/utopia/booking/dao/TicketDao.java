@@ -1,12 +1,31 @@
 package com.sst.utopia.booking.dao;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatClassOccupancy;
 import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.SeatStatus;
 import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.TicketDetails;
+import com.sst.utopia.booking.model.TicketExportRow;
+import com.sst.utopia.booking.model.User;
 
 /**
  * A Data Access Object interface to access the table of tickets/seats.
@@ -14,11 +33,255 @@ import com.sst.utopia.booking.model.Ticket;
  * @author Jonathan Lovelace
  */
 @Repository
-public interface TicketDao extends JpaRepository<Ticket, SeatLocation> {
+public interface TicketDao extends JpaRepository<Ticket, Long> {
+	/**
+	 * The start of a query selecting {@link TicketDetails}, to which a WHERE
+	 * clause on "t" (the ticket) must be added.
+	 */
+	String TICKET_DETAILS = "SELECT new com.sst.utopia.booking.model.TicketDetails("
+			+ "f.flightNumber, t.location.row, t.location.seat, t.seatClass, r.id, "
+			+ "t.price, t.reservationTimeout, t.bookingId) FROM Ticket t "
+			+ "JOIN t.location.flight f LEFT JOIN t.reserver r ";
+
+	/**
+	 * The start of a query selecting {@link TicketExportRow}, to which a WHERE
+	 * clause on "t" (the ticket) or "f" (its flight) must be added.
+	 */
+	String TICKET_EXPORT = "SELECT new com.sst.utopia.booking.model.TicketExportRow("
+			+ "f.flightNumber, f.departureDate, t.location.row, t.location.seat, "
+			+ "t.seatClass, r.id, t.price, t.reservationTimeout, t.bookingId) "
+			+ "FROM Ticket t JOIN t.location.flight f LEFT JOIN t.reserver r ";
+
+	/**
+	 * The start of a query counting the free, held, and paid-for seats of each
+	 * class on each flight, and their revenue, as {@link SeatClassOccupancy}; a
+	 * WHERE clause on "t" (the ticket) or "f" (its flight) must be added, followed
+	 * by {@link #OCCUPANCY_GROUPS}.
+	 */
+	String OCCUPANCY = "SELECT new com.sst.utopia.booking.model.SeatClassOccupancy("
+			+ "f.id, f.flightNumber, t.seatClass, "
+			+ "SUM(CASE WHEN t.reserver IS NULL THEN 1 ELSE 0 END), "
+			+ "SUM(CASE WHEN t.reserver IS NOT NULL AND t.price IS NULL THEN 1 ELSE 0 END), "
+			+ "SUM(CASE WHEN t.price IS NOT NULL THEN 1 ELSE 0 END), SUM(t.price)) "
+			+ "FROM Ticket t JOIN t.location.flight f ";
+
+	/**
+	 * The end of a query begun by {@link #OCCUPANCY}.
+	 */
+	String OCCUPANCY_GROUPS = " GROUP BY f.id, f.flightNumber, t.seatClass "
+			+ "ORDER BY f.id, t.seatClass";
+
 	/**
 	 * Get the ticket, if any, with the given booking ID.
 	 * @param bookingId the booking ID
 	 * @return the ticket with that booking ID, if any
 	 */
 	List<Ticket> findByBookingId(String bookingId);
+
+	/**
+	 * Get the ticket, if any, with the given booking ID, using the unique index on
+	 * that column.
+	 * @param bookingId the booking ID
+	 * @return the ticket with that booking ID, if any
+	 * @throws IncorrectResultSizeDataAccessException if more than one ticket has
+	 *                                                that booking ID
+	 */
+	Optional<Ticket> findOneByBookingId(String bookingId);
+
+	/**
+	 * Get the details of the ticket for a seat, without loading the ticket
+	 * itself (or its flight, airports, and reserver); the flight is left for the
+	 * caller to fill in.
+	 * @param id the {@link SeatLocation#getKey() key} of the seat
+	 * @return the details of the ticket for that seat, if there is one
+	 */
+	@Transactional(readOnly = true)
+	@Query(TICKET_DETAILS + "WHERE t.id = :id")
+	Optional<TicketDetails> findDetails(@Param("id") long id);
+
+	/**
+	 * Get the details of the ticket with the given booking ID, without loading
+	 * the ticket itself; the flight is left for the caller to fill in.
+	 * @param bookingId the booking ID
+	 * @return the details of the ticket with that booking ID, if any
+	 * @throws IncorrectResultSizeDataAccessException if more than one ticket has
+	 *                                                that booking ID
+	 */
+	@Transactional(readOnly = true)
+	@Query(TICKET_DETAILS + "WHERE t.bookingId = :bookingId")
+	Optional<TicketDetails> findDetailsByBookingId(
+			@Param("bookingId") String bookingId);
+
+	/**
+	 * Count the tickets with any of the given booking IDs.
+	 * @param bookingIds the booking IDs
+	 * @return how many tickets have one of them
+	 */
+	long countByBookingIdIn(Collection<String> bookingIds);
+
+	/**
+	 * @return how many tickets have been reserved but not paid for
+	 */
+	long countByReserverIsNotNullAndPriceIsNull();
+
+	/**
+	 * Get the booking state of every seat on a flight, without loading the
+	 * tickets themselves.
+	 * @param flight the flight
+	 * @return the state of each of its seats
+	 */
+	@Query("SELECT new com.sst.utopia.booking.model.SeatStatus(t.location.row, "
+			+ "t.location.seat, t.seatClass, r.id, t.price) FROM Ticket t "
+			+ "LEFT JOIN t.reserver r WHERE t.location.flight = :flight")
+	List<SeatStatus> findSeatStatuses(@Param("flight") Flight flight);
+
+	/**
+	 * Count the free, held, and paid-for seats of each class on a flight, and
+	 * their revenue, in a single aggregate query.
+	 * @param flight the flight
+	 * @return the counts for each class of seat it has
+	 */
+	@Query(OCCUPANCY + "WHERE f = :flight" + OCCUPANCY_GROUPS)
+	List<SeatClassOccupancy> countOccupancy(@Param("flight") Flight flight);
+
+	/**
+	 * Count the free, held, and paid-for seats of each class on each of the given
+	 * flights, and their revenue, in a single aggregate query.
+	 * @param flightIds the IDs of the flights
+	 * @return the counts for each class of seat on each flight with any seats
+	 */
+	@Query(OCCUPANCY + "WHERE f.id IN :flightIds" + OCCUPANCY_GROUPS)
+	List<SeatClassOccupancy> countOccupancyOfFlights(
+			@Param("flightIds") Collection<Integer> flightIds);
+
+	/**
+	 * Count the given seats by flight, class, and state.
+	 * @param ids the keys of the seats
+	 * @return the counts for each flight and class of seat among them
+	 */
+	@Query(OCCUPANCY + "WHERE t.id IN :ids" + OCCUPANCY_GROUPS)
+	List<SeatClassOccupancy> countOccupancyOfSeats(
+			@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Count the seats with unpaid reservations expiring no later than the given
+	 * time (those {@link #releaseHoldsExpiringBy(LocalDateTime)} would release)
+	 * by flight and class.
+	 * @param cutoff the latest timeout to count
+	 * @return the counts for each flight and class of seat among them
+	 */
+	@Query(OCCUPANCY + "WHERE t.reservationTimeout <= :cutoff "
+			+ "AND t.price IS NULL" + OCCUPANCY_GROUPS)
+	List<SeatClassOccupancy> countOccupancyOfHoldsExpiringBy(
+			@Param("cutoff") LocalDateTime cutoff);
+
+	/**
+	 * Reserve the given seat for the given user if, and only if, nobody has
+	 * reserved it yet, in a single conditional UPDATE. This is what makes
+	 * double-booking impossible without row locks: of any number of concurrent
+	 * callers for the same seat, exactly one sees an update count of 1.
+	 *
+	 * @param id        the {@link SeatLocation#getKey() key} of the seat
+	 * @param reserver  who to reserve the seat for
+	 * @param timeout   when the reservation should expire if not paid for
+	 * @param bookingId the booking ID to assign to the reservation
+	 * @return the number of rows updated: 1 if the seat was claimed, 0 if it was
+	 *         already reserved or does not exist
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("UPDATE Ticket t SET t.reserver = :reserver, "
+			+ "t.reservationTimeout = :timeout, t.bookingId = :bookingId, "
+			+ "t.version = t.version + 1 "
+			+ "WHERE t.id = :id AND t.reserver IS NULL")
+	int claimSeat(@Param("id") long id, @Param("reserver") User reserver,
+			@Param("timeout") LocalDateTime timeout,
+			@Param("bookingId") String bookingId);
+
+	/**
+	 * Get the timeouts of unpaid reservations that expired before the given time,
+	 * oldest first, using the index on the timeout column.
+	 * @param now  the current time
+	 * @param page how many timeouts to get
+	 * @return the timeouts of that many expired reservations
+	 */
+	@Query("SELECT t.reservationTimeout FROM Ticket t "
+			+ "WHERE t.reservationTimeout < :now AND t.price IS NULL "
+			+ "ORDER BY t.reservationTimeout")
+	List<LocalDateTime> findExpiredTimeouts(@Param("now") LocalDateTime now,
+			Pageable page);
+
+	/**
+	 * Get the seats with unpaid reservations expiring no later than the given time.
+	 * @param cutoff the latest timeout to include
+	 * @return those seats
+	 */
+	@Query("SELECT t.location FROM Ticket t "
+			+ "WHERE t.reservationTimeout <= :cutoff AND t.price IS NULL")
+	List<SeatLocation> findHoldsExpiringBy(@Param("cutoff") LocalDateTime cutoff);
+
+	/**
+	 * Release every unpaid reservation expiring no later than the given time, in a
+	 * single bulk UPDATE.
+	 * @param cutoff the latest timeout to release
+	 * @return the number of seats released
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("UPDATE Ticket t SET t.reserver = NULL, t.reservationTimeout = NULL, "
+			+ "t.bookingId = NULL, t.version = t.version + 1 "
+			+ "WHERE t.reservationTimeout <= :cutoff AND t.price IS NULL")
+	int releaseHoldsExpiringBy(@Param("cutoff") LocalDateTime cutoff);
+
+	/**
+	 * Release the given seat if it has an unpaid reservation that expired no later
+	 * than the given time.
+	 * @param id  the {@link SeatLocation#getKey() key} of the seat
+	 * @param now the current time
+	 * @return the number of rows updated: 1 if the seat was released, 0 otherwise
+	 */
+	@Transactional
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("UPDATE Ticket t SET t.reserver = NULL, t.reservationTimeout = NULL, "
+			+ "t.bookingId = NULL, t.version = t.version + 1 "
+			+ "WHERE t.id = :id AND t.reservationTimeout <= :now "
+			+ "AND t.price IS NULL")
+	int releaseHoldIfExpired(@Param("id") long id,
+			@Param("now") LocalDateTime now);
+
+	/**
+	 * Stream the seat and timeout of every unpaid reservation. Must be called (and
+	 * the stream consumed and closed) within a transaction.
+	 * @return a stream of two-element arrays: the {@link SeatLocation} and its
+	 *         reservation-timeout {@link LocalDateTime}
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	@Query("SELECT t.location, t.reservationTimeout FROM Ticket t "
+			+ "WHERE t.reservationTimeout IS NOT NULL AND t.price IS NULL")
+	Stream<Object[]> streamPendingReservations();
+
+	/**
+	 * Stream every ticket on a flight, for export, in primary-key (row, then
+	 * seat) order. Must be called (and the stream consumed and closed) within a
+	 * transaction.
+	 * @param flight the flight
+	 * @return its tickets
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	@Query(TICKET_EXPORT + "WHERE t.location.flight = :flight ORDER BY t.id")
+	Stream<TicketExportRow> streamExport(@Param("flight") Flight flight);
+
+	/**
+	 * Stream every ticket on the flights departing in a range of time, for
+	 * export, in primary-key (flight, then row, then seat) order. Must be called
+	 * (and the stream consumed and closed) within a transaction.
+	 * @param from the start of the range
+	 * @param to   the end of the range (exclusive)
+	 * @return the tickets on those flights
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	@Query(TICKET_EXPORT + "WHERE f.departureDate >= :from "
+			+ "AND f.departureDate < :to ORDER BY t.id")
+	Stream<TicketExportRow> streamExportDepartingBetween(
+			@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 }
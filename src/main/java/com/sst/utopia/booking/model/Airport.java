@@ -3,11 +3,17 @@ package com.sst.utopia.booking.model;
 import java.io.Serializable;
 import java.util.Objects;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 /**
  * An airport that flights can fly to or from.
  *
@@ -17,10 +23,15 @@ import javax.persistence.Table;
  * This class is Serializable because AirportDateDTO has to be and contains a
  * reference to this class.
  *
+ * Airports are reference data, so they are kept in the second-level cache.
+ *
  * @author Jonathan Lovelace
  */
 @Entity
 @Table(name = "tbl_airports")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@JsonIgnoreProperties({ "hibernateLazyInitializer", "handler" })
 public class Airport implements Serializable {
 	/**
 	 * Serialization version. Increment on any change to class structure that is (to
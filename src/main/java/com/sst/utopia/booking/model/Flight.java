@@ -4,8 +4,10 @@ import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -13,6 +15,11 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 /**
  * A flight the airline is offering.
  *
@@ -24,10 +31,18 @@ import javax.persistence.Table;
  * This class is Serializable because SeatLocation has to be and contains a
  * reference to a Flight object.
  *
+ * The airports are loaded lazily; queries whose results are shown to clients
+ * (such as {@link com.sst.utopia.booking.dao.FlightDao#findByFlightNumber(int)})
+ * fetch them explicitly. Flights are reference data, so they are kept in the
+ * second-level cache.
+ *
  * @author Jonathan Lovelace
  */
 @Entity
 @Table(name = "tbl_flights")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@JsonIgnoreProperties({ "hibernateLazyInitializer", "handler" })
 public class Flight implements Serializable {
 	/**
 	 * Serialization version. Increment on any change to class structure that is (to
@@ -45,7 +60,7 @@ public class Flight implements Serializable {
 	/**
 	 * The airport from which the flight departs.
 	 */
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name="departure")
 	private Airport departureAirport;
 	/**
@@ -56,7 +71,7 @@ public class Flight implements Serializable {
 	/**
 	 * The airport to which the flight will arrive.
 	 */
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name="destination")
 	private Airport destination;
 	/**
@@ -145,7 +160,8 @@ public class Flight implements Serializable {
 
 	/**
 	 * An object is equal iff it is a Flight with the same ID and equal arrival and
-	 * departure.
+	 * departure. Airports are compared by code, which does not require loading a
+	 * lazily-loaded airport.
 	 */
 	@Override
 	public boolean equals(final Object obj) {
@@ -153,15 +169,25 @@ public class Flight implements Serializable {
 			return true;
 		} else if (obj instanceof Flight) {
 			return id == ((Flight) obj).getId()
-					&& Objects.equals(departureAirport, ((Flight) obj).getDepartureAirport())
+					&& Objects.equals(code(departureAirport),
+							code(((Flight) obj).getDepartureAirport()))
 					&& Objects.equals(departureDate, ((Flight) obj).getDepartureDate())
-					&& Objects.equals(destination, ((Flight) obj).getDestination())
+					&& Objects.equals(code(destination),
+							code(((Flight) obj).getDestination()))
 					&& Objects.equals(arrivalDate, ((Flight) obj).getArrivalDate());
 		} else {
 			return false;
 		}
 	}
 
+	/**
+	 * @param airport an airport, possibly null
+	 * @return its code, or null if it is null
+	 */
+	private static String code(final Airport airport) {
+		return airport == null ? null : airport.getCode();
+	}
+
 	@Override
 	public String toString() {
 		return String.format(
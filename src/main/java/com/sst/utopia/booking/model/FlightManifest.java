@@ -0,0 +1,95 @@
+package com.sst.utopia.booking.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * The occupancy of a flight: how many of its seats, of each class and in
+ * total, are free, held, and paid for, and the revenue from them.
+ *
+ * @author Jonathan Lovelace
+ */
+public class FlightManifest {
+	/**
+	 * The flight number of the flight.
+	 */
+	private final int flightNumber;
+	/**
+	 * When the flight departs.
+	 */
+	private final LocalDateTime departureDate;
+	/**
+	 * The occupancy of each class of seat on the flight, in order of class.
+	 */
+	private final List<SeatClassOccupancy> classes;
+
+	/**
+	 * @param flight  the flight
+	 * @param classes the occupancy of each class of seat on it, in order of class
+	 */
+	public FlightManifest(final Flight flight,
+			final List<SeatClassOccupancy> classes) {
+		flightNumber = flight.getFlightNumber();
+		departureDate = flight.getDepartureDate();
+		this.classes = classes;
+	}
+
+	/**
+	 * @return the flight number of the flight
+	 */
+	public int getFlightNumber() {
+		return flightNumber;
+	}
+
+	/**
+	 * @return when the flight departs
+	 */
+	public LocalDateTime getDepartureDate() {
+		return departureDate;
+	}
+
+	/**
+	 * @return the occupancy of each class of seat on the flight, in order of
+	 *         class
+	 */
+	public List<SeatClassOccupancy> getClasses() {
+		return classes;
+	}
+
+	/**
+	 * @return how many seats on the flight nobody has reserved
+	 */
+	public long getFree() {
+		return total(SeatClassOccupancy::getFree);
+	}
+
+	/**
+	 * @return how many seats on the flight are reserved but not paid for
+	 */
+	public long getHeld() {
+		return total(SeatClassOccupancy::getHeld);
+	}
+
+	/**
+	 * @return how many seats on the flight have been paid for
+	 */
+	public long getPaid() {
+		return total(SeatClassOccupancy::getPaid);
+	}
+
+	/**
+	 * @return the total price paid for seats on the flight
+	 */
+	public long getRevenue() {
+		return total(SeatClassOccupancy::getRevenue);
+	}
+
+	/**
+	 * @param count a count of each class
+	 * @return its sum over all classes
+	 */
+	private long total(final ToLongFunction<SeatClassOccupancy> count) {
+		return classes.stream().mapToLong(count).sum();
+	}
+}
@@ -0,0 +1,110 @@
+package com.sst.utopia.booking.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * A request to reserve several seats on one flight for one user, all or
+ * nothing.
+ *
+ * @author Jonathan Lovelace
+ */
+public class GroupBooking {
+	/**
+	 * A seat within the flight.
+	 */
+	public static class Seat {
+		/**
+		 * The row the seat is in.
+		 */
+		private int row;
+		/**
+		 * Which seat this is in the row.
+		 */
+		private String seat;
+
+		/**
+		 * Default constructor, for JSON deserialization.
+		 */
+		public Seat() {
+		}
+
+		/**
+		 * Full constructor, for tests.
+		 */
+		public Seat(final int row, final String seat) {
+			this.row = row;
+			this.seat = seat;
+		}
+
+		/**
+		 * @return the row the seat is in
+		 */
+		public int getRow() {
+			return row;
+		}
+
+		/**
+		 * @return which seat this is in the row
+		 */
+		public String getSeat() {
+			return seat;
+		}
+	}
+
+	/**
+	 * Who to book the seats for.
+	 */
+	private User user;
+	/**
+	 * The seats to book.
+	 */
+	private List<Seat> seats = new ArrayList<>();
+
+	/**
+	 * Default constructor, for JSON deserialization.
+	 */
+	public GroupBooking() {
+	}
+
+	/**
+	 * Full constructor, for tests.
+	 */
+	public GroupBooking(final User user, final List<Seat> seats) {
+		this.user = user;
+		this.seats = seats;
+	}
+
+	/**
+	 * @return who to book the seats for
+	 */
+	public User getUser() {
+		return user;
+	}
+
+	/**
+	 * @return the seats to book
+	 */
+	public List<Seat> getSeats() {
+		return seats;
+	}
+
+	/**
+	 * @return whether the request names a user and at least one seat, and every
+	 *         seat it names has a letter
+	 */
+	@JsonIgnore
+	public boolean isComplete() {
+		if (user == null || seats == null || seats.isEmpty()) {
+			return false;
+		}
+		for (final Seat seat : seats) {
+			if (seat == null || seat.getSeat() == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
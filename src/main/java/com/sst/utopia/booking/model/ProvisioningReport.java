@@ -0,0 +1,64 @@
+package com.sst.utopia.booking.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What provisioning the seats for a schedule of flights did.
+ *
+ * @author Jonathan Lovelace
+ */
+public class ProvisioningReport {
+	/**
+	 * How many flights had their seats created.
+	 */
+	private int flights;
+	/**
+	 * How many seats were created, across all flights.
+	 */
+	private long seats;
+	/**
+	 * A description of each entry in the schedule that was skipped, and why.
+	 */
+	private final List<String> skipped = new ArrayList<>();
+
+	/**
+	 * Record that a flight's seats were created.
+	 *
+	 * @param count how many seats it has
+	 */
+	public void addFlight(final int count) {
+		flights++;
+		seats += count;
+	}
+
+	/**
+	 * Record that an entry in the schedule was skipped.
+	 *
+	 * @param reason which entry, and why
+	 */
+	public void addSkipped(final String reason) {
+		skipped.add(reason);
+	}
+
+	/**
+	 * @return how many flights had their seats created
+	 */
+	public int getFlights() {
+		return flights;
+	}
+
+	/**
+	 * @return how many seats were created
+	 */
+	public long getSeats() {
+		return seats;
+	}
+
+	/**
+	 * @return each entry that was skipped, and why
+	 */
+	public List<String> getSkipped() {
+		return skipped;
+	}
+}
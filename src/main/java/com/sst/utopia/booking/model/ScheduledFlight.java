@@ -0,0 +1,46 @@
+package com.sst.utopia.booking.model;
+
+/**
+ * One entry in a schedule file: a flight, by flight number, and the layout of
+ * the aircraft flying it.
+ *
+ * @author Jonathan Lovelace
+ */
+public class ScheduledFlight {
+	/**
+	 * The flight number of the flight.
+	 */
+	private int flight;
+	/**
+	 * The layout of the seats on the flight.
+	 */
+	private SeatLayout layout;
+
+	/**
+	 * Default constructor, for JSON deserialization.
+	 */
+	public ScheduledFlight() {
+	}
+
+	/**
+	 * Full constructor, for tests.
+	 */
+	public ScheduledFlight(final int flight, final SeatLayout layout) {
+		this.flight = flight;
+		this.layout = layout;
+	}
+
+	/**
+	 * @return the flight number of the flight
+	 */
+	public int getFlight() {
+		return flight;
+	}
+
+	/**
+	 * @return the layout of the seats on the flight
+	 */
+	public SeatLayout getLayout() {
+		return layout;
+	}
+}
@@ -0,0 +1,186 @@
+package com.sst.utopia.booking.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * How many seats of one class on one flight are free, held (reserved but not
+ * paid for), and paid for, and the revenue from those paid for. Loaded by an
+ * aggregate query, kept up to date in memory by the booking service, and also
+ * used to report the difference between the two when they disagree.
+ *
+ * @author Jonathan Lovelace
+ */
+public class SeatClassOccupancy {
+	/**
+	 * The ID of the flight.
+	 */
+	private final int flightId;
+	/**
+	 * The flight number of the flight.
+	 */
+	private final int flightNumber;
+	/**
+	 * The class of seat.
+	 */
+	private final int seatClass;
+	/**
+	 * How many seats of this class nobody has reserved.
+	 */
+	private final long free;
+	/**
+	 * How many seats of this class are reserved but not paid for.
+	 */
+	private final long held;
+	/**
+	 * How many seats of this class have been paid for.
+	 */
+	private final long paid;
+	/**
+	 * The total price paid for seats of this class.
+	 */
+	private final long revenue;
+
+	/**
+	 * Constructor for use in JPQL constructor expressions, in which an aggregate
+	 * over no rows is null.
+	 *
+	 * @param flightId     the ID of the flight
+	 * @param flightNumber the flight number of the flight
+	 * @param seatClass    the class of seat
+	 * @param free         how many seats nobody has reserved
+	 * @param held         how many seats are reserved but not paid for
+	 * @param paid         how many seats have been paid for
+	 * @param revenue      the total price paid for seats
+	 */
+	public SeatClassOccupancy(final int flightId, final int flightNumber,
+			final int seatClass, final Long free, final Long held, final Long paid,
+			final Long revenue) {
+		this(flightId, flightNumber, seatClass, orZero(free), orZero(held),
+				orZero(paid), orZero(revenue));
+	}
+
+	/**
+	 * Private, so that JPQL constructor expressions cannot pick it instead of the
+	 * one that accepts nulls.
+	 *
+	 * @param flightId     the ID of the flight
+	 * @param flightNumber the flight number of the flight
+	 * @param seatClass    the class of seat
+	 * @param free         how many seats nobody has reserved
+	 * @param held         how many seats are reserved but not paid for
+	 * @param paid         how many seats have been paid for
+	 * @param revenue      the total price paid for seats
+	 */
+	private SeatClassOccupancy(final int flightId, final int flightNumber,
+			final int seatClass, final long free, final long held, final long paid,
+			final long revenue) {
+		this.flightId = flightId;
+		this.flightNumber = flightNumber;
+		this.seatClass = seatClass;
+		this.free = free;
+		this.held = held;
+		this.paid = paid;
+		this.revenue = revenue;
+	}
+
+	/**
+	 * @param flightId     the ID of the flight
+	 * @param flightNumber the flight number of the flight
+	 * @param seatClass    the class of seat
+	 * @return no seats of that class on that flight
+	 */
+	public static SeatClassOccupancy empty(final int flightId,
+			final int flightNumber, final int seatClass) {
+		return new SeatClassOccupancy(flightId, flightNumber, seatClass, 0, 0, 0,
+				0);
+	}
+
+	/**
+	 * @param free    how many more seats nobody has reserved
+	 * @param held    how many more seats are reserved but not paid for
+	 * @param paid    how many more seats have been paid for
+	 * @param revenue how much more has been paid for seats
+	 * @return these counts, changed by those amounts
+	 */
+	public SeatClassOccupancy plus(final long free, final long held,
+			final long paid, final long revenue) {
+		return new SeatClassOccupancy(flightId, flightNumber, seatClass,
+				this.free + free, this.held + held, this.paid + paid,
+				this.revenue + revenue);
+	}
+
+	/**
+	 * @param value a possibly-null aggregate
+	 * @return it, or zero if it is null
+	 */
+	private static long orZero(final Long value) {
+		return value == null ? 0 : value;
+	}
+
+	/**
+	 * @return the ID of the flight
+	 */
+	@JsonIgnore
+	public int getFlightId() {
+		return flightId;
+	}
+
+	/**
+	 * @return the flight number of the flight
+	 */
+	public int getFlightNumber() {
+		return flightNumber;
+	}
+
+	/**
+	 * @return the class of seat
+	 */
+	public int getSeatClass() {
+		return seatClass;
+	}
+
+	/**
+	 * @return how many seats of this class nobody has reserved
+	 */
+	public long getFree() {
+		return free;
+	}
+
+	/**
+	 * @return how many seats of this class are reserved but not paid for
+	 */
+	public long getHeld() {
+		return held;
+	}
+
+	/**
+	 * @return how many seats of this class have been paid for
+	 */
+	public long getPaid() {
+		return paid;
+	}
+
+	/**
+	 * @return the total price paid for seats of this class
+	 */
+	public long getRevenue() {
+		return revenue;
+	}
+
+	/**
+	 * @param other the counts of the same class on the same flight from
+	 *              elsewhere
+	 * @return how much these counts exceed those
+	 */
+	public SeatClassOccupancy minus(final SeatClassOccupancy other) {
+		return plus(-other.free, -other.held, -other.paid, -other.revenue);
+	}
+
+	/**
+	 * @return whether every count (and the revenue) is zero
+	 */
+	@JsonIgnore
+	public boolean isZero() {
+		return free == 0 && held == 0 && paid == 0 && revenue == 0;
+	}
+}
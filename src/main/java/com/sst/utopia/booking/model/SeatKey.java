@@ -0,0 +1,95 @@
+package com.sst.utopia.booking.model;
+
+import java.io.Serializable;
+
+/**
+ * A seat's location packed into a single long (the same number that is the
+ * primary key of its ticket; see {@link SeatLocation#getKey()}), for use as a
+ * key in the service's in-memory maps. Hashing and comparing one is a few
+ * arithmetic operations on that number, where hashing or comparing a
+ * {@link SeatLocation} means going through its flight.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class SeatKey implements Serializable {
+	/**
+	 * Serialization version. Increment on any change to class structure that is
+	 * (to be) pushed to production.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The multiplier used to spread the bits of the packed value over the hash
+	 * code (2^64 divided by the golden ratio), since seats on one flight differ
+	 * only in their low bits and seats on different flights only in their high
+	 * bits.
+	 */
+	private static final long MIX = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * The flight ID, row, and seat ordinal, packed.
+	 */
+	private final long value;
+
+	/**
+	 * @param value a seat's location, packed as by {@link SeatLocation#getKey()}
+	 */
+	public SeatKey(final long value) {
+		this.value = value;
+	}
+
+	/**
+	 * @param seat the location of a seat
+	 * @return the key for that seat
+	 * @throws IllegalArgumentException if its row or seat is out of range
+	 */
+	public static SeatKey of(final SeatLocation seat) {
+		return new SeatKey(seat.getKey());
+	}
+
+	/**
+	 * @return the flight ID, row, and seat ordinal, packed
+	 */
+	public long getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the ID of the flight the seat is on
+	 */
+	public int getFlightId() {
+		return (int) (value >>> 32);
+	}
+
+	/**
+	 * @return the row the seat is in
+	 */
+	public int getRow() {
+		return (int) (value >>> 16) & 0xFFFF;
+	}
+
+	/**
+	 * @return the {@link SeatLocation#seatOrdinal(String) ordinal} of the seat
+	 *         within the row
+	 */
+	public int getSeatOrdinal() {
+		return (int) value & 0xFFFF;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) ((value * MIX) >>> 32);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		return this == obj
+				|| (obj instanceof SeatKey && value == ((SeatKey) obj).value);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Seat %d/%d on flight #%d", getRow(), getSeatOrdinal(),
+				getFlightId());
+	}
+}
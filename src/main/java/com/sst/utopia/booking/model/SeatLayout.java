@@ -0,0 +1,156 @@
+package com.sst.utopia.booking.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The layout of the seats on an aircraft, from which the seats (tickets) for a
+ * flight are created: a list of bands of rows, each with the same seat letters
+ * in every row and all of the same class.
+ *
+ * @author Jonathan Lovelace
+ */
+public class SeatLayout {
+	/**
+	 * A band of consecutive rows with the same seats, all of the same class.
+	 */
+	public static class Band {
+		/**
+		 * The first row in the band.
+		 */
+		private int firstRow;
+		/**
+		 * The last row in the band.
+		 */
+		private int lastRow;
+		/**
+		 * The seat letters in each row, such as "ABCDEF".
+		 */
+		private String letters;
+		/**
+		 * The class of every seat in the band, from 1 to 9: seat maps show it as
+		 * a single digit.
+		 */
+		private int seatClass;
+
+		/**
+		 * Default constructor, for JSON deserialization.
+		 */
+		public Band() {
+		}
+
+		/**
+		 * Full constructor, for tests.
+		 */
+		public Band(final int firstRow, final int lastRow, final String letters,
+				final int seatClass) {
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+			this.letters = letters;
+			this.seatClass = seatClass;
+		}
+
+		/**
+		 * @return the first row in the band
+		 */
+		public int getFirstRow() {
+			return firstRow;
+		}
+
+		/**
+		 * @return the last row in the band
+		 */
+		public int getLastRow() {
+			return lastRow;
+		}
+
+		/**
+		 * @return the seat letters in each row
+		 */
+		public String getLetters() {
+			return letters;
+		}
+
+		/**
+		 * @return the class of every seat in the band
+		 */
+		public int getSeatClass() {
+			return seatClass;
+		}
+
+		/**
+		 * @param other another band
+		 * @return whether any seat is in both bands
+		 */
+		private boolean overlaps(final Band other) {
+			if (firstRow > other.getLastRow() || other.getFirstRow() > lastRow) {
+				return false;
+			}
+			for (final char letter : letters.toCharArray()) {
+				if (other.getLetters().indexOf(letter) >= 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The bands of rows.
+	 */
+	private List<Band> bands = new ArrayList<>();
+
+	/**
+	 * Default constructor, for JSON deserialization.
+	 */
+	public SeatLayout() {
+	}
+
+	/**
+	 * Full constructor, for tests.
+	 */
+	public SeatLayout(final List<Band> bands) {
+		this.bands = bands;
+	}
+
+	/**
+	 * @return the bands of rows
+	 */
+	public List<Band> getBands() {
+		return bands;
+	}
+
+	/**
+	 * Check that this layout describes seats that can exist: at least one band;
+	 * rows from 1 to 65535, with no band ending before it starts; seat letters
+	 * from 'A' to 'Z', none repeated within a band; a class from 1 to 9, since
+	 * seat maps show it as a single digit; and no seat in more than one band.
+	 *
+	 * @throws IllegalArgumentException if it does not
+	 */
+	public void validate() {
+		if (bands == null || bands.isEmpty()) {
+			throw new IllegalArgumentException("Layout has no seats");
+		}
+		for (int i = 0; i < bands.size(); i++) {
+			final Band band = bands.get(i);
+			if (band.getFirstRow() < 1 || band.getLastRow() > 0xFFFF
+					|| band.getLastRow() < band.getFirstRow()) {
+				throw new IllegalArgumentException("Invalid rows in band " + i);
+			} else if (band.getLetters() == null || band.getLetters().isEmpty()
+					|| !band.getLetters().matches("[A-Z]+")
+					|| band.getLetters().chars().distinct().count() != band
+							.getLetters().length()) {
+				throw new IllegalArgumentException("Invalid letters in band " + i);
+			} else if (band.getSeatClass() < 1 || band.getSeatClass() > 9) {
+				throw new IllegalArgumentException("Invalid class in band " + i);
+			}
+			for (int j = 0; j < i; j++) {
+				if (band.overlaps(bands.get(j))) {
+					throw new IllegalArgumentException(
+							String.format("Bands %d and %d overlap", j, i));
+				}
+			}
+		}
+	}
+}
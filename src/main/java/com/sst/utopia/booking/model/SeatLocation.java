@@ -3,17 +3,22 @@ package com.sst.utopia.booking.model;
 import java.io.Serializable;
 import java.util.Objects;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.Column;
 import javax.persistence.Embeddable;
+import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 
 /**
- * Composite key for the Ticket class, consisting of the flight (ID, not
- * customer-visible "flight number"), row, and seat.
+ * The location of a seat, consisting of the flight (ID, not customer-visible
+ * "flight number"), row, and seat: the natural key of the Ticket class, which
+ * is unique in the ticket table but not its primary key. The primary key is
+ * instead this location {@link #getKey() packed into a single number}.
  *
- * Declared to implement Serializable because "Composite-id class must implement
- * Serializable."
+ * Still Serializable, since it used to be a composite ID and seat locations are
+ * kept in caches.
  *
  * @author Jonathan Lovelace
  */
@@ -26,22 +31,40 @@ public class SeatLocation implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /**
-     * The flight this seat is on.
+     * The number of distinct characters allowed in a seat designation, plus one
+     * (for "no character").
+     */
+    private static final int SEAT_RADIX = 37;
+
+    /**
+     * The most characters a seat designation may have, for its ordinal to fit in
+     * 16 bits.
      */
-    @ManyToOne
-    @JoinColumn(name="flight")
+    private static final int MAX_SEAT_LENGTH = 3;
+
+    /**
+     * The flight this seat is on. Loaded eagerly, unlike the other associations:
+     * it is part of the primary key, and seat locations are hashed and compared
+     * (in the seat inventory, the expiry scheduler, and so on) long after the
+     * session that loaded them has closed, which a lazy proxy could not survive.
+     * Its airports are still loaded lazily. Like the row and seat, it is never
+     * updated: a ticket may be given a different copy of the same flight (see
+     * Ticket#useFlight), but never moved to another flight.
+     */
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name="flight", nullable = false, updatable = false)
     private Flight flight;
 
     /**
      * The row this seat is in.
      */
-    @Column(name="seatRow")
+    @Column(name="seatRow", nullable = false, updatable = false)
     private int row;
 
     /**
      * Which seat this is in the row.
      */
-    @Column
+    @Column(nullable = false, updatable = false)
     private String seat;
     /**
      * Default constructor for JPA.
@@ -78,19 +101,95 @@ public class SeatLocation implements Serializable {
 		return seat;
 	}
 
+	/**
+	 * @return this location packed into a single number: the flight ID in the
+	 *         high 32 bits, then the row and the {@link #seatOrdinal(String)
+	 *         ordinal of the seat} in 16 bits each
+	 * @throws IllegalArgumentException if the row or seat is out of range
+	 */
+	@JsonIgnore
+	public long getKey() {
+		return key(flight.getId(), row, seat);
+	}
+
+	/**
+	 * @param flightId the ID of a flight
+	 * @param row      a row on that flight
+	 * @param seat     a seat in that row
+	 * @return that seat's location packed into a single number, as in
+	 *         {@link #getKey()}
+	 * @throws IllegalArgumentException if the row or seat is out of range
+	 */
+	public static long key(final int flightId, final int row, final String seat) {
+		if (row < 0 || row > 0xFFFF) {
+			throw new IllegalArgumentException("Row out of range: " + row);
+		}
+		return ((long) flightId << 32) | ((long) row << 16) | seatOrdinal(seat);
+	}
+
+	/**
+	 * Number a seat designation: each character, 'A' to 'Z' or '0' to '9', is a
+	 * digit from 1 to 36 in base 37. A single-letter seat's ordinal is thus its
+	 * position in the alphabet, counting from 1.
+	 *
+	 * @param seat a seat designation of from one to three letters or digits
+	 * @return its ordinal, which fits in 16 bits
+	 * @throws IllegalArgumentException if the designation is empty, too long, or
+	 *                                  has any other characters
+	 */
+	public static int seatOrdinal(final String seat) {
+		if (seat.isEmpty() || seat.length() > MAX_SEAT_LENGTH) {
+			throw new IllegalArgumentException("Invalid seat: " + seat);
+		}
+		int ordinal = 0;
+		for (int i = 0; i < seat.length(); i++) {
+			final char ch = seat.charAt(i);
+			final int digit;
+			if (ch >= 'A' && ch <= 'Z') {
+				digit = ch - 'A' + 1;
+			} else if (ch >= '0' && ch <= '9') {
+				digit = ch - '0' + 27;
+			} else {
+				throw new IllegalArgumentException("Invalid seat: " + seat);
+			}
+			ordinal = ordinal * SEAT_RADIX + digit;
+		}
+		return ordinal;
+	}
+
+	/**
+	 * @param flight a flight, possibly null
+	 * @return its ID, or 0 if it is null
+	 */
+	private static int flightId(final Flight flight) {
+		return flight == null ? 0 : flight.getId();
+	}
+
+	/**
+	 * Computed without allocating, and from the flight's ID rather than the
+	 * flight's own hash code.
+	 */
 	@Override
 	public int hashCode() {
-		return Objects.hash(flight, row, seat);
+		return (flightId(flight) * 31 + row) * 31 + Objects.hashCode(seat);
 	}
 
+	/**
+	 * An object is equal iff it is a SeatLocation with the same row and seat on
+	 * a flight with the same ID. Flights are compared only by ID, since that is
+	 * what identifies the seat (and its ticket), and comparing the rest of a
+	 * flight means comparing its airports and dates.
+	 */
 	@Override
 	public boolean equals(final Object obj) {
 		if (this == obj) {
 			return true;
 		} else if (obj instanceof SeatLocation) {
-			return Objects.equals(flight, ((SeatLocation) obj).getFlight())
-					&& row == ((SeatLocation) obj).getRow()
-					&& Objects.equals(seat, ((SeatLocation) obj).getSeat());
+			final SeatLocation other = (SeatLocation) obj;
+			return row == other.getRow()
+					&& flightId(flight) == flightId(other.getFlight())
+					&& (flight == null) == (other.getFlight() == null)
+					&& Objects.equals(seat, other.getSeat());
 		} else {
 			return false;
 		}
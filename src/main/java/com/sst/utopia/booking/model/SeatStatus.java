@@ -0,0 +1,85 @@
+package com.sst.utopia.booking.model;
+
+/**
+ * A lightweight, read-only view of the booking state of a single seat on a
+ * flight, as loaded (by a single query per flight) to build the in-memory seat
+ * inventory without hydrating full Ticket entities.
+ *
+ * @author Jonathan Lovelace
+ */
+public class SeatStatus {
+	/**
+	 * The row the seat is in.
+	 */
+	private final int row;
+	/**
+	 * Which seat this is in the row.
+	 */
+	private final String seat;
+	/**
+	 * What class of seat this is.
+	 */
+	private final int seatClass;
+	/**
+	 * Whether anyone has reserved the seat.
+	 */
+	private final boolean reserved;
+	/**
+	 * The price paid for the seat, or null if not (yet) paid for.
+	 */
+	private final Integer price;
+
+	/**
+	 * Constructor for use in JPQL constructor expressions.
+	 *
+	 * @param row        the row the seat is in
+	 * @param seat       which seat this is in the row
+	 * @param seatClass  the class of the seat
+	 * @param reserverId the ID of the user who reserved the seat, or null if
+	 *                   nobody has
+	 * @param price      the price paid for the seat, if any
+	 */
+	public SeatStatus(final int row, final String seat, final int seatClass,
+			final Integer reserverId, final Integer price) {
+		this.row = row;
+		this.seat = seat;
+		this.seatClass = seatClass;
+		this.reserved = reserverId != null;
+		this.price = price;
+	}
+
+	/**
+	 * @return the row the seat is in
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * @return which seat this is in the row
+	 */
+	public String getSeat() {
+		return seat;
+	}
+
+	/**
+	 * @return the class of the seat
+	 */
+	public int getSeatClass() {
+		return seatClass;
+	}
+
+	/**
+	 * @return whether anyone has reserved the seat
+	 */
+	public boolean isReserved() {
+		return reserved;
+	}
+
+	/**
+	 * @return the price paid for the seat, or null if not (yet) paid for
+	 */
+	public Integer getPrice() {
+		return price;
+	}
+}
@@ -3,11 +3,16 @@ package com.sst.utopia.booking.model;
 import java.time.LocalDateTime;
 
 import javax.persistence.Column;
-import javax.persistence.EmbeddedId;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 
 import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -28,18 +33,38 @@ import com.fasterxml.jackson.annotation.JsonUnwrapped;
  * check validity, and callers are expected to pass only valid objects to other
  * code. But some setters do some basic sanity checks.
  *
+ * A ticket is identified by its {@link SeatLocation}, which is unique, but its
+ * primary key is that location packed into a single number (see
+ * {@link SeatLocation#getKey()}), which is cheaper to look up, compare, and
+ * index (every other index on the table carries a copy of the primary key)
+ * than the flight, row, and seat string together.
+ *
  * @author Jonathan Lovelace
  *
  */
 @Entity
-@Table(name = "tbl_tickets")
+@Table(name = "tbl_tickets", uniqueConstraints = @UniqueConstraint(
+		name = "uk_tickets_seat", columnNames = { "flight", "seatRow", "seat" }),
+		indexes = {
+		@Index(name = "idx_tickets_booking_id", columnList = "bookingId",
+				unique = true),
+		@Index(name = "idx_tickets_reservation_timeout",
+				columnList = "reservationTimeout") })
 public class Ticket {
+	/**
+	 * The primary key: the seat's location packed into a single number. Not
+	 * exposed to clients, who refer to tickets by location or booking ID.
+	 */
+	@Id
+	@Column(updatable = false)
+	@JsonIgnore
+	private long id;
 	/**
 	 * What flight this seat/ticket is for, and where in the plane it is.
 	 */
-	@EmbeddedId
+	@Embedded
 	@JsonUnwrapped
-	private SeatLocation id;
+	private SeatLocation location;
 	/**
 	 * What class of seat this is. For now first class is "1", business class is
 	 * "2", and economy is "3". TODO: make an enum?
@@ -47,9 +72,10 @@ public class Ticket {
 	@Column(name = "class")
 	private int seatClass;
 	/**
-	 * The holder of this ticket, if any.
+	 * The holder of this ticket, if any. Loaded lazily, since the service only
+	 * ever checks whether there is one, and it is never shown to clients.
 	 */
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(nullable = true, name="reserver")
 	@JsonProperty(access = Access.WRITE_ONLY)
 	private User reserver;
@@ -70,12 +96,20 @@ public class Ticket {
 	private LocalDateTime reservationTimeout;
 
 	/**
-	 * The "ID" that customers can use to refer to their booking; it is (intended to
-	 * be) a hash of the flight, row, seat, and reserver, and must be set when
-	 * 'reserver' is set.
+	 * The "ID" that customers can use to refer to their booking, as generated by
+	 * the configured booking-ID generator; it must be set when 'reserver' is set. It is unique (and indexed) across all tickets.
 	 */
 	@Column(nullable = true)
 	private String bookingId;
+	/**
+	 * The version of this ticket, for optimistic locking: every change to the row
+	 * (including the bulk updates in the DAOs) increments it, and an update made
+	 * through JPA fails if the row has changed since the ticket was loaded. Not
+	 * exposed to clients.
+	 */
+	@Version
+	@Column(nullable = false)
+	private int version;
 	/**
 	 * Default constructor for JPA.
 	 */
@@ -84,17 +118,41 @@ public class Ticket {
 	/**
 	 * More complete constructor for tests.
 	 */
-	public Ticket(final SeatLocation id, final int seatClass) {
-		this.id = id;
+	public Ticket(final SeatLocation location, final int seatClass) {
+		id = location.getKey();
+		this.location = location;
 		this.seatClass = seatClass;
 	}
 
+	/**
+	 * @return the primary key, which is the seat's location packed into a number
+	 */
+	@JsonIgnore
+	public long getId() {
+		return id;
+	}
+
 	/**
 	 * @return the flight, row, and seat that together uniquely identify this
 	 *         ticket.
 	 */
-	public SeatLocation getId() {
-		return id;
+	public SeatLocation getLocation() {
+		return location;
+	}
+
+	/**
+	 * Refer to the given copy of this ticket's flight, for example one whose
+	 * airports are loaded, rather than the one it was loaded with. This does not
+	 * change the ticket's location.
+	 *
+	 * @param flight a copy of the flight this ticket is for
+	 * @throws IllegalArgumentException if it is a different flight
+	 */
+	public void useFlight(final Flight flight) {
+		if (flight.getId() != location.getFlight().getId()) {
+			throw new IllegalArgumentException("Ticket is for a different flight");
+		}
+		location = new SeatLocation(flight, location.getRow(), location.getSeat());
 	}
 
 	/**
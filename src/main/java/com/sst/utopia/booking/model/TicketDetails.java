@@ -0,0 +1,167 @@
+package com.sst.utopia.booking.model;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * A read-only view of a ticket, as shown to clients by the details endpoints,
+ * loaded by a single query selecting just the columns it needs rather than by
+ * hydrating a Ticket entity (and the flight, airports, and user it refers to).
+ * It serializes to the same JSON as {@link Ticket}; the flight, which is the
+ * same for many tickets, is filled in afterwards from the flight cache.
+ *
+ * @author Jonathan Lovelace
+ */
+@JsonPropertyOrder({ "flight", "row", "seat", "seatClass", "price",
+		"reservationTimeout", "bookingId", "reserved" })
+public class TicketDetails {
+	/**
+	 * The flight number of the flight the seat is on.
+	 */
+	private final int flightNumber;
+	/**
+	 * The flight the seat is on, once filled in.
+	 */
+	private final Flight flight;
+	/**
+	 * The row the seat is in.
+	 */
+	private final int row;
+	/**
+	 * Which seat this is in the row.
+	 */
+	private final String seat;
+	/**
+	 * What class of seat this is.
+	 */
+	private final int seatClass;
+	/**
+	 * Whether anyone has reserved the seat.
+	 */
+	private final boolean reserved;
+	/**
+	 * The price paid for the seat, or null if not (yet) paid for.
+	 */
+	private final Integer price;
+	/**
+	 * When an unpaid reservation of the seat expires, if there is one.
+	 */
+	private final LocalDateTime reservationTimeout;
+	/**
+	 * The booking ID of the reservation, if any.
+	 */
+	private final String bookingId;
+
+	/**
+	 * Constructor for use in JPQL constructor expressions.
+	 *
+	 * @param flightNumber       the flight number of the flight the seat is on
+	 * @param row                the row the seat is in
+	 * @param seat               which seat this is in the row
+	 * @param seatClass          the class of the seat
+	 * @param reserverId         the ID of the user who reserved the seat, or
+	 *                           null if nobody has
+	 * @param price              the price paid for the seat, if any
+	 * @param reservationTimeout when an unpaid reservation expires, if any
+	 * @param bookingId          the booking ID of the reservation, if any
+	 */
+	public TicketDetails(final int flightNumber, final int row, final String seat,
+			final int seatClass, final Integer reserverId, final Integer price,
+			final LocalDateTime reservationTimeout, final String bookingId) {
+		this(flightNumber, null, row, seat, seatClass, reserverId != null, price,
+				reservationTimeout, bookingId);
+	}
+
+	/**
+	 * Full constructor.
+	 */
+	private TicketDetails(final int flightNumber, final Flight flight,
+			final int row, final String seat, final int seatClass,
+			final boolean reserved, final Integer price,
+			final LocalDateTime reservationTimeout, final String bookingId) {
+		this.flightNumber = flightNumber;
+		this.flight = flight;
+		this.row = row;
+		this.seat = seat;
+		this.seatClass = seatClass;
+		this.reserved = reserved;
+		this.price = price;
+		this.reservationTimeout = reservationTimeout;
+		this.bookingId = bookingId;
+	}
+
+	/**
+	 * @param flight the flight the seat is on
+	 * @return a copy of these details with that flight filled in
+	 */
+	public TicketDetails withFlight(final Flight flight) {
+		return new TicketDetails(flightNumber, flight, row, seat, seatClass,
+				reserved, price, reservationTimeout, bookingId);
+	}
+
+	/**
+	 * @return the flight number of the flight the seat is on
+	 */
+	@JsonIgnore
+	public int getFlightNumber() {
+		return flightNumber;
+	}
+
+	/**
+	 * @return the flight the seat is on, or null if not filled in
+	 */
+	public Flight getFlight() {
+		return flight;
+	}
+
+	/**
+	 * @return the row the seat is in
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * @return which seat this is in the row
+	 */
+	public String getSeat() {
+		return seat;
+	}
+
+	/**
+	 * @return the class of the seat
+	 */
+	public int getSeatClass() {
+		return seatClass;
+	}
+
+	/**
+	 * @return whether anyone has reserved the seat
+	 */
+	public boolean isReserved() {
+		return reserved;
+	}
+
+	/**
+	 * @return the price paid for the seat, or null if not (yet) paid for
+	 */
+	public Integer getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return when an unpaid reservation of the seat expires, if there is one
+	 */
+	public LocalDateTime getReservationTimeout() {
+		return reservationTimeout;
+	}
+
+	/**
+	 * @return the booking ID of the reservation, if any
+	 */
+	public String getBookingId() {
+		return bookingId;
+	}
+}
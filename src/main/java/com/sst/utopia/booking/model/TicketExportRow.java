@@ -0,0 +1,185 @@
+package com.sst.utopia.booking.model;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * One ticket as exported for downstream reporting (revenue, manifests): loaded
+ * by a projection query rather than as an entity, so that exporting millions
+ * of tickets does not fill the persistence context. Unlike what is shown to
+ * booking clients, this includes who reserved the seat.
+ *
+ * @author Jonathan Lovelace
+ */
+@JsonPropertyOrder({ "flight", "departureDate", "row", "seat", "seatClass",
+		"status", "reserver", "price", "reservationTimeout", "bookingId" })
+public class TicketExportRow {
+	/**
+	 * The columns, in order, for CSV output.
+	 */
+	public static final String CSV_HEADER = "flight,departureDate,row,seat,"
+			+ "seatClass,status,reserver,price,reservationTimeout,bookingId";
+
+	/**
+	 * The flight number of the flight the seat is on.
+	 */
+	private final int flight;
+	/**
+	 * When that flight departs.
+	 */
+	private final LocalDateTime departureDate;
+	/**
+	 * The row the seat is in.
+	 */
+	private final int row;
+	/**
+	 * Which seat this is in the row.
+	 */
+	private final String seat;
+	/**
+	 * What class of seat this is.
+	 */
+	private final int seatClass;
+	/**
+	 * The ID of the user who reserved the seat, or null if nobody has.
+	 */
+	private final Integer reserver;
+	/**
+	 * The price paid for the seat, or null if not (yet) paid for.
+	 */
+	private final Integer price;
+	/**
+	 * When an unpaid reservation of the seat expires, if there is one.
+	 */
+	private final LocalDateTime reservationTimeout;
+	/**
+	 * The booking ID of the reservation, if any.
+	 */
+	private final String bookingId;
+
+	/**
+	 * Constructor for use in JPQL constructor expressions.
+	 *
+	 * @param flight             the flight number of the flight the seat is on
+	 * @param departureDate      when that flight departs
+	 * @param row                the row the seat is in
+	 * @param seat               which seat this is in the row
+	 * @param seatClass          the class of the seat
+	 * @param reserver           the ID of the user who reserved the seat, or null
+	 *                           if nobody has
+	 * @param price              the price paid for the seat, if any
+	 * @param reservationTimeout when an unpaid reservation expires, if any
+	 * @param bookingId          the booking ID of the reservation, if any
+	 */
+	public TicketExportRow(final int flight, final LocalDateTime departureDate,
+			final int row, final String seat, final int seatClass,
+			final Integer reserver, final Integer price,
+			final LocalDateTime reservationTimeout, final String bookingId) {
+		this.flight = flight;
+		this.departureDate = departureDate;
+		this.row = row;
+		this.seat = seat;
+		this.seatClass = seatClass;
+		this.reserver = reserver;
+		this.price = price;
+		this.reservationTimeout = reservationTimeout;
+		this.bookingId = bookingId;
+	}
+
+	/**
+	 * @return the flight number of the flight the seat is on
+	 */
+	public int getFlight() {
+		return flight;
+	}
+
+	/**
+	 * @return when the flight departs
+	 */
+	public LocalDateTime getDepartureDate() {
+		return departureDate;
+	}
+
+	/**
+	 * @return the row the seat is in
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * @return which seat this is in the row
+	 */
+	public String getSeat() {
+		return seat;
+	}
+
+	/**
+	 * @return the class of the seat
+	 */
+	public int getSeatClass() {
+		return seatClass;
+	}
+
+	/**
+	 * @return "free" if nobody has reserved the seat, "paid" if it has been paid
+	 *         for, and "held" if it is reserved but not yet paid for
+	 */
+	public String getStatus() {
+		if (reserver == null) {
+			return "free";
+		} else if (price == null) {
+			return "held";
+		} else {
+			return "paid";
+		}
+	}
+
+	/**
+	 * @return the ID of the user who reserved the seat, or null if nobody has
+	 */
+	public Integer getReserver() {
+		return reserver;
+	}
+
+	/**
+	 * @return the price paid for the seat, or null if not (yet) paid for
+	 */
+	public Integer getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return when an unpaid reservation of the seat expires, if there is one
+	 */
+	public LocalDateTime getReservationTimeout() {
+		return reservationTimeout;
+	}
+
+	/**
+	 * @return the booking ID of the reservation, if any
+	 */
+	public String getBookingId() {
+		return bookingId;
+	}
+
+	/**
+	 * @return this row as a line of CSV (without the line terminator), with its
+	 *         columns as in {@link #CSV_HEADER}; null values are left empty. No
+	 *         column can contain a comma or quote, so none is quoted.
+	 */
+	public String toCsv() {
+		return String.format("%d,%s,%d,%s,%d,%s,%s,%s,%s,%s", flight,
+				csv(departureDate), row, csv(seat), seatClass, getStatus(),
+				csv(reserver), csv(price), csv(reservationTimeout), csv(bookingId));
+	}
+
+	/**
+	 * @param value a value, possibly null
+	 * @return it as a CSV column
+	 */
+	private static String csv(final Object value) {
+		return value == null ? "" : value.toString();
+	}
+}
@@ -0,0 +1,38 @@
+package com.sst.utopia.booking.service;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Helper for in-memory bookkeeping that must only reflect committed changes.
+ *
+ * @author Jonathan Lovelace
+ */
+final class AfterCommit {
+	/**
+	 * Do not instantiate.
+	 */
+	private AfterCommit() {
+	}
+
+	/**
+	 * Run an action once the current transaction commits, or immediately if there
+	 * is no current transaction. If the transaction rolls back, the action is
+	 * never run.
+	 *
+	 * @param action the action to run
+	 */
+	static void run(final Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCommit() {
+							action.run();
+						}
+					});
+		} else {
+			action.run();
+		}
+	}
+}
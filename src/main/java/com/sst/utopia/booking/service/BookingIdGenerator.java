@@ -0,0 +1,24 @@
+package com.sst.utopia.booking.service;
+
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.User;
+
+/**
+ * A strategy for generating the booking ID given to the holder of a new
+ * reservation, which they then use to pay for, extend, or cancel it. Which
+ * implementation is used is chosen by the "utopia.booking-id.generator"
+ * property.
+ *
+ * @author Jonathan Lovelace
+ */
+public interface BookingIdGenerator {
+	/**
+	 * Generate the booking ID for a seat being booked by a user. Booking IDs must
+	 * be unique among current bookings.
+	 *
+	 * @param seat the seat being booked
+	 * @param user who it is being booked for
+	 * @return the booking ID
+	 */
+	String generate(SeatLocation seat, User user);
+}
@@ -0,0 +1,115 @@
+package com.sst.utopia.booking.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times the booking service's main write operations (booking, paying, and
+ * extending reservations), both in total and in the database, so it is
+ * possible to see where their latency goes. The total covers the whole call,
+ * including the commit of the transaction it runs in: booking a single seat
+ * starts that transaction in a nested call made through the service's proxy
+ * (and not timed separately). The database time is the time spent in calls to
+ * the ticket DAOs during the operation; it excludes that commit, except for
+ * paying by booking ID, which has no transaction of its own, so each DAO call
+ * commits its own. Both timers are tagged with the operation and its outcome
+ * ("success" or the simple name of the exception thrown).
+ *
+ * @author Jonathan Lovelace
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class BookingMetrics {
+	/**
+	 * Nanoseconds spent in the database so far by the operation running on this
+	 * thread, or null if there is none.
+	 */
+	private static final ThreadLocal<long[]> DB_NANOS = new ThreadLocal<>();
+
+	/**
+	 * The registry to publish metrics in.
+	 */
+	private final MeterRegistry registry;
+
+	/**
+	 * @param registry the registry to publish metrics in
+	 */
+	@Autowired
+	public BookingMetrics(final MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Time one of the instrumented booking-service operations.
+	 *
+	 * @param call the call to the operation
+	 * @return what the operation returned
+	 * @throws Throwable whatever the operation threw
+	 */
+	@Around("execution(* com.sst.utopia.booking.service.BookingService.bookTicket(..))"
+			+ " || execution(* com.sst.utopia.booking.service.BookingService.acceptPayment(..))"
+			+ " || execution(* com.sst.utopia.booking.service.BookingService.extendReservationTimeout(..))")
+	public Object timeOperation(final ProceedingJoinPoint call) throws Throwable {
+		if (DB_NANOS.get() != null) {
+			return call.proceed();
+		}
+		final long[] dbNanos = new long[1];
+		DB_NANOS.set(dbNanos);
+		final long start = System.nanoTime();
+		String outcome = "success";
+		try {
+			return call.proceed();
+		} catch (final Throwable except) {
+			outcome = except.getClass().getSimpleName();
+			throw except;
+		} finally {
+			final long total = System.nanoTime() - start;
+			DB_NANOS.remove();
+			final String operation = call.getSignature().getName();
+			Timer.builder("utopia.booking.operation")
+					.description("Total time of booking-service operations")
+					.tags("operation", operation, "outcome", outcome)
+					.publishPercentileHistogram().register(registry)
+					.record(total, TimeUnit.NANOSECONDS);
+			Timer.builder("utopia.booking.operation.db")
+					.description("Database time of booking-service operations")
+					.tags("operation", operation, "outcome", outcome)
+					.publishPercentileHistogram().register(registry)
+					.record(dbNanos[0], TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Add the time spent in a ticket-DAO call to the database time of the
+	 * operation running on this thread, if any.
+	 *
+	 * @param call the call to the DAO
+	 * @return what the DAO returned
+	 * @throws Throwable whatever the DAO threw
+	 */
+	@Around("target(com.sst.utopia.booking.dao.TicketDao)"
+			+ " || target(com.sst.utopia.booking.dao.TicketBatchDao)")
+	public Object timeDatabase(final ProceedingJoinPoint call) throws Throwable {
+		final long[] dbNanos = DB_NANOS.get();
+		if (dbNanos == null) {
+			return call.proceed();
+		}
+		final long start = System.nanoTime();
+		try {
+			return call.proceed();
+		} finally {
+			dbNanos[0] += System.nanoTime() - start;
+		}
+	}
+}
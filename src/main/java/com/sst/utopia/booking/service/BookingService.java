@@ -1,26 +1,42 @@
 package com.sst.utopia.booking.service;
 
+import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.DigestUtils;
 
-import com.sst.utopia.booking.dao.FlightDao;
+import com.sst.utopia.booking.dao.TicketBatchDao;
 import com.sst.utopia.booking.dao.TicketDao;
 import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.FlightManifest;
+import com.sst.utopia.booking.model.SeatClassOccupancy;
+import com.sst.utopia.booking.model.SeatKey;
 import com.sst.utopia.booking.model.SeatLocation;
 import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.TicketDetails;
 import com.sst.utopia.booking.model.User;
 
 /**
  * Main business-logic class.
  *
  * FIXME: We need to prevent ordinary users from cancelling (and probably paying
- * for) tickets they do not own; our booking ID is extremely guessaable!
+ * for) tickets they do not own; booking IDs are no longer guessable (unless the
+ * legacy MD5 generator is configured), but anyone who has one can use it.
  *
  * @author Jonathan Lovelace
  */
@@ -33,10 +49,52 @@ public class BookingService {
 	private TicketDao ticketDao;
 
 	/**
-	 * DAO to access flight ticket.
+	 * DAO for bulk operations on the ticket table.
 	 */
 	@Autowired
-	private FlightDao flightDao;
+	private TicketBatchDao ticketBatchDao;
+
+	/**
+	 * Gate letting only one request per seat try to book it at a time.
+	 */
+	@Autowired
+	private SeatGate seatGate;
+
+	/**
+	 * Generator of booking IDs.
+	 */
+	@Autowired
+	private BookingIdGenerator bookingIdGenerator;
+
+	/**
+	 * Cache of flights by flight number.
+	 */
+	@Autowired
+	private FlightCache flightCache;
+
+	/**
+	 * In-memory seat availability.
+	 */
+	@Autowired
+	private SeatInventory inventory;
+
+	/**
+	 * Exact-time expiry of unpaid reservations.
+	 */
+	@Autowired
+	private ReservationExpiryScheduler expiry;
+
+	/**
+	 * Running per-flight, per-class occupancy counts.
+	 */
+	@Autowired
+	private FlightManifests manifests;
+	/**
+	 * This service as other beans see it, through its proxy, so that a call from
+	 * one of its methods to a transactional one runs in a transaction.
+	 */
+	@Autowired
+	private BookingService self;
 
 	/**
 	 * Default unpaid-booking expiration, in minutes.
@@ -50,12 +108,7 @@ public class BookingService {
 	 * @return the flight with that number, or null if there
 	 */
 	public Flight getFlight(final int flightNumber) {
-		final List<Flight> list = flightDao.findByFlightNumber(flightNumber);
-		if (list.isEmpty()) {
-			return null;
-		} else {
-			return list.get(0);
-		}
+		return flightCache.get(flightNumber);
 	}
 
 	/**
@@ -65,7 +118,93 @@ public class BookingService {
 	 * @throws NoSuchElementException if no such seat in the database
 	 */
 	public Ticket getTicket(final SeatLocation seat) {
-		return ticketDao.findById(seat).get();
+		return ticketDao.findById(key(seat)).get();
+	}
+
+	/**
+	 * @param seat the location of a seat
+	 * @return the key of its ticket
+	 * @throws NoSuchElementException if there can be no such seat: its flight is
+	 *                                unknown, or its row or seat is out of range
+	 */
+	private static long key(final SeatLocation seat) {
+		if (seat.getFlight() == null) {
+			throw new NoSuchElementException("No such flight");
+		}
+		try {
+			return seat.getKey();
+		} catch (final IllegalArgumentException except) {
+			throw new NoSuchElementException("No such seat");
+		}
+	}
+
+	/**
+	 * Whether a seat we failed to claim exists, and so was already reserved. The
+	 * in-memory seat inventory can answer that without another query whenever it
+	 * knows the seat; whether a seat is taken, by contrast, it may have stale,
+	 * so it is never trusted to turn a booking away.
+	 *
+	 * @param seat the location of a seat
+	 * @return whether it is present in the database
+	 */
+	private boolean exists(final SeatLocation seat) {
+		return inventory.isKnown(seat) || ticketDao.existsById(key(seat));
+	}
+
+	/**
+	 * Get the details of the ticket for a seat, as shown to clients, without
+	 * loading the ticket entity.
+	 * @param seat the flight and seat location desired
+	 * @return the details of the ticket, booked or not, for that seat
+	 * @throws NoSuchElementException if no such seat in the database
+	 */
+	public TicketDetails getTicketDetails(final SeatLocation seat) {
+		return ticketDao.findDetails(key(seat)).get()
+				.withFlight(seat.getFlight());
+	}
+
+	/**
+	 * Check whether a seat is free, from the in-memory seat inventory if possible.
+	 * @param seat the flight and seat location in question
+	 * @return whether nobody has reserved it
+	 * @throws NoSuchElementException if no such seat in the database
+	 */
+	public boolean isSeatFree(final SeatLocation seat) {
+		final SeatState state = inventory.getState(seat);
+		if (state == SeatState.UNKNOWN) {
+			return !getTicket(seat).isReserved();
+		} else {
+			return state == SeatState.FREE;
+		}
+	}
+
+	/**
+	 * Get the availability of all the seats on a flight.
+	 * @param flight the flight in question
+	 * @return the availability of its seats
+	 */
+	public FlightSeats getSeatMap(final Flight flight) {
+		return inventory.getSeats(flight);
+	}
+
+	/**
+	 * Get the occupancy of a flight: how many of its seats of each class are
+	 * free, held, and paid for, and the revenue from them.
+	 * @param flight the flight in question
+	 * @return its occupancy
+	 */
+	public FlightManifest getManifest(final Flight flight) {
+		return manifests.getManifest(flight);
+	}
+
+	/**
+	 * Recount the occupancy of every flight whose occupancy has been asked about
+	 * from the database, correcting any drift in the running counts.
+	 * @return how much the running counts of each class of seat that disagreed
+	 *         with the database exceeded it
+	 */
+	public List<SeatClassOccupancy> reconcileManifests() {
+		return manifests.reconcile();
 	}
 
 	/**
@@ -75,19 +214,45 @@ public class BookingService {
 	 * @throws IllegalStateException if the uniqueness constraint is violated.
 	 */
 	public Ticket getBooking(final String bookingId) {
-		final List<Ticket> list = ticketDao.findByBookingId(bookingId);
-		if (list.isEmpty()) {
-			return null;
-		} else if (list.size() > 1) {
-			throw new IllegalStateException("Uniqueness constraint violated");
-		} else {
-			return list.get(0);
+		return findBooking(bookingId).orElse(null);
+	}
+
+	/**
+	 * Get the details of a ticket by its booking ID, as shown to clients,
+	 * without loading the ticket entity.
+	 * @param bookingId the booking ID for the ticket.
+	 * @return the details of the ticket, or null if not found
+	 * @throws IllegalStateException if the uniqueness constraint is violated.
+	 */
+	public TicketDetails getBookingDetails(final String bookingId) {
+		try {
+			return ticketDao.findDetailsByBookingId(bookingId)
+					.map(details -> details.withFlight(
+							flightCache.get(details.getFlightNumber())))
+					.orElse(null);
+		} catch (final IncorrectResultSizeDataAccessException except) {
+			throw new IllegalStateException("Uniqueness constraint violated", except);
+		}
+	}
+
+	/**
+	 * Get a specified ticket by its booking ID.
+	 * @param bookingId the booking ID for the ticket.
+	 * @return the ticket, if any
+	 * @throws IllegalStateException if the uniqueness constraint is violated.
+	 */
+	private Optional<Ticket> findBooking(final String bookingId) {
+		try {
+			return ticketDao.findOneByBookingId(bookingId);
+		} catch (final IncorrectResultSizeDataAccessException except) {
+			throw new IllegalStateException("Uniqueness constraint violated", except);
 		}
 	}
 
 	/**
 	 * Book a ticket for the specified seat (on the specified flight) for the
-	 * specified user.
+	 * specified user. If other requests are already trying to book the same
+	 * seat, this waits for them, and fails if they succeed.
 	 *
 	 * @param seat the seat to book
 	 * @param user who to book the seat for
@@ -96,8 +261,8 @@ public class BookingService {
 	 *                                  custom exception)
 	 */
 	public Ticket bookTicket(final SeatLocation seat, final User user) {
-		return bookTicket(seat, user,
-				LocalDateTime.now().plusMinutes(defaultBookingExpiration));
+		return seatGate.book(new SeatKey(key(seat)), () -> self.bookTicket(seat,
+				user, LocalDateTime.now().plusMinutes(defaultBookingExpiration)));
 	}
 
 	/**
@@ -106,6 +271,10 @@ public class BookingService {
 	 * time. This method is not intended to be called by any code outside this class
 	 * other than test code.
 	 *
+	 * The seat is claimed with a single conditional UPDATE rather than by loading
+	 * the ticket, checking it, and saving it back, so two concurrent callers can
+	 * never both succeed.
+	 *
 	 * @param seat    the seat to book
 	 * @param user    who to book the seat for
 	 * @param timeout when the reservation should expire if not confirmed (paid)
@@ -117,19 +286,72 @@ public class BookingService {
 	@Transactional
 	public Ticket bookTicket(final SeatLocation seat, final User user,
 			final LocalDateTime timeout) {
-		final Ticket ticket = ticketDao.findById(seat).get();
-		if (ticket.getReserver() != null) {
+		if (ticketDao.claimSeat(key(seat), user, timeout,
+				bookingIdGenerator.generate(seat, user)) == 0) {
+			if (exists(seat)) {
+				throw new IllegalArgumentException("Ticket already reserved");
+			} else {
+				throw new NoSuchElementException("No such seat");
+			}
+		}
+		inventory.markHeld(seat);
+		expiry.register(seat, timeout);
+		final Ticket booked = ticketDao.findById(key(seat)).get();
+		manifests.markHeld(seat.getFlight().getId(), booked.getSeatClass(), 1);
+		return withCachedFlight(booked);
+	}
+
+	/**
+	 * Book tickets for all the specified seats for the specified user, or none of
+	 * them. The seats are claimed with one JDBC batch of conditional UPDATEs in a
+	 * single transaction, which is rolled back if any of them cannot be claimed.
+	 *
+	 * @param seats the seats to book
+	 * @param user  who to book the seats for
+	 * @return the booking ID for each seat, in the same order
+	 * @throws IllegalArgumentException if any of the seats is already booked, or
+	 *                                  appears more than once
+	 * @throws NoSuchElementException   if any of the seats is not present in the
+	 *                                  database
+	 */
+	@Transactional
+	public List<String> bookTickets(final List<SeatLocation> seats,
+			final User user) {
+		final LocalDateTime timeout =
+				LocalDateTime.now().plusMinutes(defaultBookingExpiration);
+		final List<String> bookingIds = new ArrayList<>(seats.size());
+		for (final SeatLocation seat : seats) {
+			key(seat); // Fail early on a seat that cannot exist
+			bookingIds.add(bookingIdGenerator.generate(seat, user));
+		}
+		final int[] counts =
+				ticketBatchDao.claimSeats(seats, user, timeout, bookingIds);
+		boolean unknown = false;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == Statement.SUCCESS_NO_INFO) {
+				unknown = true;
+			} else if (counts[i] == 0) {
+				if (exists(seats.get(i))) {
+					throw new IllegalArgumentException("Ticket already reserved");
+				} else {
+					throw new NoSuchElementException("No such seat");
+				}
+			}
+		}
+		if (unknown && ticketDao.countByBookingIdIn(bookingIds) != seats.size()) {
 			throw new IllegalArgumentException("Ticket already reserved");
 		}
-		ticket.setReserver(user);
-		ticket.setReservationTimeout(timeout);
-		ticket.setBookingId(
-				DigestUtils.md5DigestAsHex(String
-						.format("%d %d %s %d", seat.getFlight().getFlightNumber(),
-								seat.getRow(), seat.getSeat(), user.getId())
-						.getBytes()));
-		ticketDao.saveAndFlush(ticket);
-		return ticket;
+		for (final SeatLocation seat : seats) {
+			inventory.markHeld(seat);
+			expiry.register(seat, timeout);
+		}
+		// The seats' classes are only known to the database, so only ask for them
+		// if the occupancy of any of their flights is being kept.
+		if (manifests.isLoaded(flightIds(seats))) {
+			ticketDao.countOccupancyOfSeats(keys(seats)).forEach(count -> manifests
+					.markHeld(count.getFlightId(), count.getSeatClass(), count.getHeld()));
+		}
+		return bookingIds;
 	}
 
 	/**
@@ -151,14 +373,35 @@ public class BookingService {
 			throw new IllegalArgumentException("Ticket is not booked");
 		} else if (booking.getPrice() != null) {
 			if (booking.getPrice().equals(price)) {
-				return booking;
+				return withCachedFlight(booking);
 			} else {
 				throw new IllegalStateException("Ticket has already been paid for");
 			}
 		}
 		booking.setPrice(price);
 		ticketDao.saveAndFlush(booking);
-		return booking;
+		inventory.markPaid(booking.getLocation());
+		expiry.unregister(booking.getLocation());
+		manifests.markPaid(booking.getLocation().getFlight().getId(),
+				booking.getSeatClass(), price);
+		return withCachedFlight(booking);
+	}
+
+	/**
+	 * Tickets returned to clients should refer to the cached copy of their
+	 * flight, whose airports are loaded, rather than to one loaded along with the
+	 * ticket, whose airports are lazy proxies.
+	 *
+	 * @param ticket a ticket
+	 * @return the same ticket, now referring to the cached copy of its flight
+	 */
+	private Ticket withCachedFlight(final Ticket ticket) {
+		final Flight flight =
+				flightCache.get(ticket.getLocation().getFlight().getFlightNumber());
+		if (flight != null) {
+			ticket.useFlight(flight);
+		}
+		return ticket;
 	}
 
 	/**
@@ -174,21 +417,15 @@ public class BookingService {
 	 *                                  different price.
 	 */
 	public Ticket acceptPayment(final String bookingId, final int price) {
-		final List<Ticket> matchingTickets = ticketDao.findByBookingId(bookingId);
-		if (matchingTickets.isEmpty()) {
-			throw new IllegalArgumentException("No such ticket");
-		} else if (matchingTickets.size() > 1) {
-			throw new IllegalStateException("Uniqueness constraint violated");
-		} else {
-			return acceptPayment(matchingTickets.get(0), price);
-		}
+		return acceptPayment(findBooking(bookingId).orElseThrow(
+				() -> new IllegalArgumentException("No such ticket")), price);
 	}
 
 	/**
-	 * Cancel a reservation that has been made but not paid for. We assume that this
-	 * will usually be called by some background process (cron job equivalent) to
-	 * clean up unconfirmed bookings, but the frontend may call it either when the
-	 * ticket times out or if the user explicitly cancels before paying.
+	 * Cancel a reservation that has been made but not paid for. Timed-out
+	 * reservations are released in bulk by {@link ReservationSweeper}, but the
+	 * frontend may call this either when the ticket times out or if the user
+	 * explicitly cancels before paying.
 	 *
 	 * @param ticket the booking in question (only the ID fields are used)
 	 * @throws IllegalArgumentException if the ticket has been paid for
@@ -204,6 +441,10 @@ public class BookingService {
 		}
 		booking.setReserver(null);
 		ticketDao.saveAndFlush(booking);
+		inventory.markFree(booking.getLocation());
+		expiry.unregister(booking.getLocation());
+		manifests.markFree(booking.getLocation().getFlight().getId(),
+				booking.getSeatClass(), 1);
 	}
 
 	/**
@@ -214,14 +455,7 @@ public class BookingService {
 	 */
 	@Transactional
 	public void cancelPendingReservation(final String bookingId) {
-		final List<Ticket> matchingTickets = ticketDao.findByBookingId(bookingId);
-		if (!matchingTickets.isEmpty()) {
-			if (matchingTickets.size() > 1) {
-				throw new IllegalStateException("Uniqueness constraint violated");
-			} else {
-				cancelPendingReservation(matchingTickets.get(0));
-			}
-		}
+		findBooking(bookingId).ifPresent(this::cancelPendingReservation);
 	}
 
 	/**
@@ -245,6 +479,7 @@ public class BookingService {
 			booking.setReservationTimeout(
 					LocalDateTime.now().plusMinutes(defaultBookingExpiration));
 			ticketDao.save(booking);
+			expiry.register(booking.getLocation(), booking.getReservationTimeout());
 		}
 	}
 	/**
@@ -260,20 +495,125 @@ public class BookingService {
 	 */
 	@Transactional
 	public void extendReservationTimeout(final String bookingId) {
-		final List<Ticket> matchingTickets = ticketDao.findByBookingId(bookingId);
-		if (matchingTickets.isEmpty()) {
-			throw new IllegalArgumentException("No such ticket");
-		} else if (matchingTickets.size() > 1) {
-			throw new IllegalStateException("Uniqueness constraint violated");
+		final Ticket booking = findBooking(bookingId).orElseThrow(
+				() -> new IllegalArgumentException("No such ticket"));
+		if (booking.getPrice() != null) {
+			throw new IllegalStateException("Ticket has already been paid for");
 		} else {
-			final Ticket booking = matchingTickets.get(0);
-			if (booking.getPrice() != null) {
-				throw new IllegalStateException("Ticket has already been paid for");
-			} else {
-				booking.setReservationTimeout(
-						LocalDateTime.now().plusMinutes(defaultBookingExpiration));
-				ticketDao.save(booking);
+			booking.setReservationTimeout(
+					LocalDateTime.now().plusMinutes(defaultBookingExpiration));
+			ticketDao.save(booking);
+			expiry.register(booking.getLocation(), booking.getReservationTimeout());
+		}
+	}
+
+	/**
+	 * Get the timeout of the oldest unpaid reservation that has expired but not
+	 * yet been released.
+	 *
+	 * @param now the current time
+	 * @return that reservation's timeout, if there is any such reservation
+	 */
+	public Optional<LocalDateTime> getOldestExpiredReservation(
+			final LocalDateTime now) {
+		return ticketDao.findExpiredTimeouts(now, PageRequest.of(0, 1)).stream()
+				.findFirst();
+	}
+
+	/**
+	 * Release a batch of (roughly) the given number of unpaid reservations whose
+	 * timeouts have passed, oldest first. The batch is bounded by the timeout of
+	 * the batchSize-th oldest expired reservation, and is then released with a
+	 * single bulk UPDATE, so it may be slightly larger than batchSize if several
+	 * reservations share that timeout.
+	 *
+	 * @param now       the current time
+	 * @param batchSize how many reservations to release
+	 * @return the number of seats released
+	 */
+	@Transactional
+	public int releaseExpiredReservations(final LocalDateTime now,
+			final int batchSize) {
+		final List<LocalDateTime> timeouts =
+				ticketDao.findExpiredTimeouts(now, PageRequest.of(0, batchSize));
+		if (timeouts.isEmpty()) {
+			return 0;
+		}
+		final LocalDateTime cutoff = timeouts.get(timeouts.size() - 1);
+		final List<SeatLocation> seats = ticketDao.findHoldsExpiringBy(cutoff);
+		final List<SeatClassOccupancy> counts = manifests.isLoaded(flightIds(seats))
+				? ticketDao.countOccupancyOfHoldsExpiringBy(cutoff)
+				: Collections.emptyList();
+		final int released = ticketDao.releaseHoldsExpiringBy(cutoff);
+		if (released == seats.size()) {
+			seats.forEach(inventory::markFree);
+			counts.forEach(count -> manifests.markFree(count.getFlightId(),
+					count.getSeatClass(), count.getHeld()));
+		} else {
+			// Something changed between the two statements; don't guess what.
+			seats.stream().map(SeatLocation::getFlight).distinct()
+					.forEach(flight -> {
+						inventory.invalidate(flight);
+						manifests.invalidate(flight);
+					});
+		}
+		return released;
+	}
+
+	/**
+	 * Release those of the given seats whose unpaid reservations have expired,
+	 * one conditional UPDATE per seat, in a single transaction.
+	 *
+	 * @param seats the seats whose reservations are thought to have expired
+	 * @param now   the current time
+	 * @return the number of seats released
+	 */
+	@Transactional
+	public int releaseExpiredReservations(final Collection<SeatLocation> seats,
+			final LocalDateTime now) {
+		final List<SeatLocation> released = new ArrayList<>();
+		for (final SeatLocation seat : seats) {
+			if (ticketDao.releaseHoldIfExpired(key(seat), now) > 0) {
+				inventory.markFree(seat);
+				released.add(seat);
 			}
 		}
+		if (!released.isEmpty() && manifests.isLoaded(flightIds(released))) {
+			ticketDao.countOccupancyOfSeats(keys(released)).forEach(count -> manifests
+					.markFree(count.getFlightId(), count.getSeatClass(), count.getFree()));
+		}
+		return released.size();
+	}
+
+	/**
+	 * @param seats some seats
+	 * @return the IDs of their flights
+	 */
+	private static Set<Integer> flightIds(final Collection<SeatLocation> seats) {
+		return seats.stream().map(seat -> seat.getFlight().getId())
+				.collect(Collectors.toSet());
+	}
+
+	/**
+	 * @param seats some seats
+	 * @return the keys of their tickets
+	 */
+	private static List<Long> keys(final Collection<SeatLocation> seats) {
+		return seats.stream().map(BookingService::key).collect(Collectors.toList());
+	}
+
+	/**
+	 * Pass the seat and timeout of every unpaid reservation to the given callback,
+	 * streaming them from the database rather than loading them all at once.
+	 *
+	 * @param callback what to do with each reservation
+	 */
+	@Transactional(readOnly = true)
+	public void forEachPendingReservation(
+			final BiConsumer<SeatLocation, LocalDateTime> callback) {
+		try (Stream<Object[]> stream = ticketDao.streamPendingReservations()) {
+			stream.forEach(row -> callback.accept((SeatLocation) row[0],
+					(LocalDateTime) row[1]));
+		}
 	}
 }
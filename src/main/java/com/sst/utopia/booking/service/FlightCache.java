@@ -0,0 +1,244 @@
+package com.sst.utopia.booking.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheManager;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sst.utopia.booking.dao.FlightDao;
+import com.sst.utopia.booking.model.Airport;
+import com.sst.utopia.booking.model.Flight;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * A bounded cache of flights by flight number, in front of
+ * {@link FlightDao#findByFlightNumber(int)}. Flights are not modified by this
+ * service, so they are cached for a fixed time after being loaded; flight
+ * numbers that turn out not to exist are cached too, but for a shorter time.
+ * Hit, miss, and eviction counts are published as metrics under the name
+ * "flights".
+ *
+ * Below this cache, flights and airports are also kept in Hibernate's
+ * second-level cache (see
+ * {@link com.sst.utopia.booking.SecondLevelCacheConfiguration}), so a flight
+ * that drops out of this one can usually be rebuilt without going to the
+ * database. {@link #invalidateAll()} clears both.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+public class FlightCache {
+	/**
+	 * DAO to access flight table.
+	 */
+	private final FlightDao flightDao;
+
+	/**
+	 * The persistence unit, whose second-level cache holds flights and airports.
+	 */
+	private final EntityManagerFactory entityManagerFactory;
+
+	/**
+	 * The cache manager behind the second-level cache, which keeps its
+	 * statistics (Hibernate's are left off).
+	 */
+	private final CacheManager secondLevelCacheManager;
+
+	/**
+	 * Runs loads in a read-only transaction.
+	 */
+	private final TransactionTemplate readOnly;
+
+	/**
+	 * The cache itself. Unknown flight numbers map to an empty Optional.
+	 */
+	private final Cache<Integer, Optional<Flight>> cache;
+
+	/**
+	 * @param flightDao       DAO to access flight table
+	 * @param entityManagerFactory the persistence unit
+	 * @param secondLevelCacheManager the cache manager behind its second-level
+	 *                             cache
+	 * @param transactionManager   the transaction manager
+	 * @param registry        registry to publish cache metrics in
+	 * @param maximumSize     the most flights to cache
+	 * @param ttlSeconds      how long to cache a flight that exists
+	 * @param negativeSeconds how long to remember that a flight number does not
+	 *                        exist
+	 */
+	@Autowired
+	public FlightCache(final FlightDao flightDao,
+			final EntityManagerFactory entityManagerFactory,
+			final CacheManager secondLevelCacheManager,
+			final PlatformTransactionManager transactionManager,
+			final MeterRegistry registry,
+			@Value("${utopia.cache.flights.maximum-size}") final long maximumSize,
+			@Value("${utopia.cache.flights.ttl-seconds}") final long ttlSeconds,
+			@Value("${utopia.cache.flights.negative-ttl-seconds}") final long negativeSeconds) {
+		this.flightDao = flightDao;
+		this.entityManagerFactory = entityManagerFactory;
+		this.secondLevelCacheManager = secondLevelCacheManager;
+		readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+		final long ttl = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		final long negativeTtl = TimeUnit.SECONDS.toNanos(negativeSeconds);
+		cache = Caffeine.newBuilder().maximumSize(maximumSize)
+				.expireAfter(new Expiry<Integer, Optional<Flight>>() {
+					@Override
+					public long expireAfterCreate(final Integer key,
+							final Optional<Flight> value, final long currentTime) {
+						return value.isPresent() ? ttl : negativeTtl;
+					}
+
+					@Override
+					public long expireAfterUpdate(final Integer key,
+							final Optional<Flight> value, final long currentTime,
+							final long currentDuration) {
+						return expireAfterCreate(key, value, currentTime);
+					}
+
+					@Override
+					public long expireAfterRead(final Integer key,
+							final Optional<Flight> value, final long currentTime,
+							final long currentDuration) {
+						return currentDuration;
+					}
+				}).recordStats().build();
+		CaffeineCacheMetrics.monitor(registry, cache, "flights");
+	}
+
+	/**
+	 * Get a specified flight by its flight number.
+	 * @param flightNumber the flight-number of a flight
+	 * @return the flight with that number, or null if there is none
+	 */
+	public Flight get(final int flightNumber) {
+		return cache.get(flightNumber, this::load).orElse(null);
+	}
+
+	/**
+	 * Forget every flight we have cached, and every flight and airport in the
+	 * second-level cache, for example because the flights service has changed
+	 * the schedule.
+	 */
+	public void invalidateAll() {
+		final javax.persistence.Cache secondLevel = entityManagerFactory.getCache();
+		secondLevel.evict(Flight.class);
+		secondLevel.evict(Airport.class);
+		entityManagerFactory.unwrap(SessionFactory.class).getCache()
+				.evictQueryRegion(FlightDao.FLIGHTS_BY_NUMBER_REGION);
+		cache.invalidateAll();
+	}
+
+	/**
+	 * @return hit, miss, and put (or load) counts, and sizes, for this cache
+	 *         ("flights") and for each second-level cache region holding flights
+	 *         or airports
+	 */
+	public Map<String, Map<String, Long>> getStatistics() {
+		final Map<String, Map<String, Long>> retval = new LinkedHashMap<>();
+		final CacheStats stats = cache.stats();
+		retval.put("flights", counts(stats.hitCount(), stats.missCount(),
+				stats.loadCount(), cache.estimatedSize()));
+		for (final String region : new String[] { Flight.class.getName(),
+				Airport.class.getName(), FlightDao.FLIGHTS_BY_NUMBER_REGION }) {
+			retval.put(region, counts(region));
+		}
+		return retval;
+	}
+
+	/**
+	 * @param region the name of a second-level cache region
+	 * @return its hit, miss, and put counts, as JCache publishes them over JMX,
+	 *         and its size
+	 */
+	private Map<String, Long> counts(final String region) {
+		final javax.cache.Cache<Object, Object> cache =
+				secondLevelCacheManager.getCache(region);
+		final CacheStatisticsMXBean stats;
+		try {
+			stats = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+					new ObjectName(String.format(
+							"javax.cache:type=CacheStatistics,CacheManager=%s,Cache=%s",
+							sanitize(secondLevelCacheManager.getURI().toString()),
+							sanitize(region))),
+					CacheStatisticsMXBean.class);
+		} catch (final MalformedObjectNameException except) {
+			throw new IllegalStateException(except);
+		}
+		return counts(stats.getCacheHits(), stats.getCacheMisses(),
+				stats.getCachePuts(), cache.unwrap(Cache.class).estimatedSize());
+	}
+
+	/**
+	 * @param name the name of a cache or cache manager
+	 * @return it as Caffeine's JCache provider writes it in the names of the
+	 *         MBeans it registers
+	 */
+	private static String sanitize(final String name) {
+		return name.replaceAll(",|:|=|\n", ".");
+	}
+
+	/**
+	 * @param hits   how many lookups found an entry
+	 * @param misses how many lookups did not
+	 * @param puts   how many entries were added
+	 * @param size   how many entries there are
+	 * @return those, by name
+	 */
+	private static Map<String, Long> counts(final long hits, final long misses,
+			final long puts, final long size) {
+		final Map<String, Long> retval = new LinkedHashMap<>();
+		retval.put("hits", hits);
+		retval.put("misses", misses);
+		retval.put("puts", puts);
+		retval.put("size", size);
+		return retval;
+	}
+
+	/**
+	 * Load a flight, and its airports, within a transaction: when the query
+	 * result comes from the query cache, the airports are not fetched with it,
+	 * and have to be loaded (usually from the second-level cache) before the
+	 * session closes, since the flight outlives it here.
+	 *
+	 * @param flightNumber the flight-number of a flight
+	 * @return the flight with that number, if any
+	 */
+	private Optional<Flight> load(final int flightNumber) {
+		return readOnly.execute(status -> {
+			final List<Flight> list = flightDao.findByFlightNumber(flightNumber);
+			if (list.isEmpty()) {
+				return Optional.empty();
+			} else {
+				final Flight flight = list.get(0);
+				Hibernate.initialize(flight.getDepartureAirport());
+				Hibernate.initialize(flight.getDestination());
+				return Optional.of(flight);
+			}
+		});
+	}
+}
@@ -0,0 +1,262 @@
+package com.sst.utopia.booking.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.FlightManifest;
+import com.sst.utopia.booking.model.SeatClassOccupancy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * In-memory occupancy (free, held, and paid-for seats of each class, and
+ * revenue) of flights that have been asked about recently, loaded lazily (one
+ * aggregate query per flight) on first use and then kept up to date by the
+ * booking service as seats are booked, paid for, cancelled, and released.
+ * Changes are only applied once the transaction making them commits. The
+ * number of flights kept is bounded, and a flight not asked about for a while
+ * is forgotten, to be reloaded when it next is.
+ *
+ * Changes made by other instances of this service, and any change that races
+ * the loading of a flight, are only picked up when the counts are reconciled
+ * with the database (see {@link ManifestReconciler}). Every class whose counts
+ * disagree with the database then is counted in the "utopia.manifest.drift"
+ * metric.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+public class FlightManifests {
+	/**
+	 * DAO to access ticket table.
+	 */
+	private final TicketDao ticketDao;
+	/**
+	 * Count of classes of seat found to have drifted from the database.
+	 */
+	private final Counter drifted;
+	/**
+	 * The occupancy of each flight we have loaded, by flight ID: a view of a
+	 * bounded cache.
+	 */
+	private final ConcurrentMap<Integer, FlightOccupancy> flights;
+	/**
+	 * The most flights to recount in a single query when reconciling.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * @param ticketDao     DAO to access ticket table
+	 * @param registry      the registry to publish metrics in
+	 * @param maximumSize   the most flights to keep the occupancy of
+	 * @param expireSeconds how long, in seconds, to keep the occupancy of a
+	 *                      flight nobody has asked about
+	 * @param chunkSize     the most flights to recount in a single query when
+	 *                      reconciling
+	 */
+	@Autowired
+	public FlightManifests(final TicketDao ticketDao,
+			final MeterRegistry registry,
+			@Value("${utopia.manifest.maximum-size}") final long maximumSize,
+			@Value("${utopia.manifest.expire.seconds}") final long expireSeconds,
+			@Value("${utopia.manifest.reconcile.chunk-size}") final int chunkSize) {
+		this.ticketDao = ticketDao;
+		flights = Caffeine.newBuilder().maximumSize(maximumSize)
+				.expireAfterAccess(expireSeconds, TimeUnit.SECONDS)
+				.writer(new CacheWriter<Integer, FlightOccupancy>() {
+					@Override
+					public void write(final Integer flightId,
+							final FlightOccupancy occupancy) {
+						// Nothing to do until it is dropped.
+					}
+
+					@Override
+					public void delete(final Integer flightId,
+							final FlightOccupancy occupancy, final RemovalCause cause) {
+						occupancy.forget();
+					}
+				}).<Integer, FlightOccupancy>build().asMap();
+		this.chunkSize = chunkSize;
+		drifted = Counter.builder("utopia.manifest.drift")
+				.description("Classes of seat whose running counts disagreed with the database")
+				.register(registry);
+	}
+
+	/**
+	 * Get the occupancy of a flight, loading it if we have not yet done so.
+	 *
+	 * @param flight a flight
+	 * @return its occupancy
+	 */
+	public FlightManifest getManifest(final Flight flight) {
+		FlightOccupancy occupancy = flights.get(flight.getId());
+		if (occupancy == null) {
+			final FlightOccupancy loaded = new FlightOccupancy(flight.getId(),
+					flight.getFlightNumber(), ticketDao.countOccupancy(flight));
+			occupancy = flights.putIfAbsent(flight.getId(), loaded);
+			if (occupancy == null) {
+				occupancy = loaded;
+			}
+		}
+		return new FlightManifest(flight, occupancy.getClasses());
+	}
+
+	/**
+	 * @param flightIds the IDs of some flights
+	 * @return whether we have the occupancy of any of them loaded, and so need to
+	 *         be told about changes to their seats
+	 */
+	public boolean isLoaded(final Collection<Integer> flightIds) {
+		return flightIds.stream().anyMatch(flights::containsKey);
+	}
+
+	/**
+	 * Forget what we know about a flight's occupancy, so it is reloaded from the
+	 * database the next time it is asked about.
+	 *
+	 * @param flight a flight
+	 */
+	public void invalidate(final Flight flight) {
+		flights.remove(flight.getId());
+	}
+
+	/**
+	 * Record, once the current transaction commits, that seats have been
+	 * reserved.
+	 *
+	 * @param flightId  the ID of their flight
+	 * @param seatClass their class
+	 * @param count     how many of them there are
+	 */
+	public void markHeld(final int flightId, final int seatClass,
+			final long count) {
+		afterCommit(flightId, occupancy -> occupancy.add(seatClass, -count, count,
+				0, 0));
+	}
+
+	/**
+	 * Record, once the current transaction commits, that a reserved seat has been
+	 * paid for.
+	 *
+	 * @param flightId  the ID of its flight
+	 * @param seatClass its class
+	 * @param price     the price paid for it
+	 */
+	public void markPaid(final int flightId, final int seatClass,
+			final int price) {
+		afterCommit(flightId, occupancy -> occupancy.add(seatClass, 0, -1, 1,
+				price));
+	}
+
+	/**
+	 * Record, once the current transaction commits, that reserved but unpaid
+	 * seats are no longer reserved.
+	 *
+	 * @param flightId  the ID of their flight
+	 * @param seatClass their class
+	 * @param count     how many of them there are
+	 */
+	public void markFree(final int flightId, final int seatClass,
+			final long count) {
+		afterCommit(flightId, occupancy -> occupancy.add(seatClass, count, -count,
+				0, 0));
+	}
+
+	/**
+	 * Run an update to a flight's occupancy if we have it loaded, after the
+	 * current transaction (if any) commits. Until that transaction finishes, the
+	 * flight's counts are marked as having a change pending, so a recount that
+	 * may have seen the change in the database is not accepted.
+	 *
+	 * @param flightId the ID of the flight being updated
+	 * @param update   the update to run
+	 */
+	private void afterCommit(final int flightId,
+			final Consumer<FlightOccupancy> update) {
+		final FlightOccupancy occupancy = flights.get(flightId);
+		if (occupancy == null) {
+			return;
+		} else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			occupancy.beginChange();
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCompletion(final int status) {
+							if (status == STATUS_COMMITTED) {
+								update.accept(occupancy);
+							}
+							occupancy.endChange();
+						}
+					});
+		} else {
+			update.accept(occupancy);
+		}
+	}
+
+	/**
+	 * Recount every loaded flight's occupancy from the database, a chunk of
+	 * flights per aggregate query, and replace the running counts with the
+	 * result. A flight whose counts change while its chunk is recounted, or
+	 * that has a change pending, is left alone until the next reconciliation,
+	 * since the query may or may not have seen that change.
+	 *
+	 * @return how much the running counts of each class of seat that disagreed
+	 *         with the database exceeded it
+	 */
+	public List<SeatClassOccupancy> reconcile() {
+		final List<FlightOccupancy> loaded = new ArrayList<>(flights.values());
+		final List<SeatClassOccupancy> drift = new ArrayList<>();
+		for (int start = 0; start < loaded.size(); start += chunkSize) {
+			drift.addAll(reconcile(loaded.subList(start,
+					Math.min(start + chunkSize, loaded.size()))));
+		}
+		drifted.increment(drift.size());
+		return drift;
+	}
+
+	/**
+	 * Recount some flights' occupancy from the database, in a single aggregate
+	 * query, and replace their running counts with the result.
+	 *
+	 * @param chunk the flights' running counts
+	 * @return how much the running counts of each class of seat that disagreed
+	 *         with the database exceeded it
+	 */
+	private List<SeatClassOccupancy> reconcile(final List<FlightOccupancy> chunk) {
+		// The versions must be taken before the query starts.
+		final Map<FlightOccupancy, Long> versions = new HashMap<>();
+		chunk.forEach(occupancy -> versions.put(occupancy, occupancy.getVersion()));
+		final Map<Integer, List<SeatClassOccupancy>> counted = new HashMap<>();
+		for (final SeatClassOccupancy count : ticketDao.countOccupancyOfFlights(
+				chunk.stream().map(FlightOccupancy::getFlightId)
+						.collect(Collectors.toList()))) {
+			counted.computeIfAbsent(count.getFlightId(), id -> new ArrayList<>())
+					.add(count);
+		}
+		final List<SeatClassOccupancy> drift = new ArrayList<>();
+		versions.forEach((occupancy, version) -> drift.addAll(occupancy.reconcile(
+				version, counted.getOrDefault(occupancy.getFlightId(),
+						Collections.emptyList()))));
+		return drift;
+	}
+}
@@ -0,0 +1,170 @@
+package com.sst.utopia.booking.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.sst.utopia.booking.model.SeatClassOccupancy;
+
+/**
+ * The running count of free, held, and paid-for seats of each class on a
+ * single flight, and their revenue, as loaded from the database and then
+ * adjusted as seats change state.
+ *
+ * Instances are safe for use by multiple threads.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class FlightOccupancy {
+	/**
+	 * The ID of the flight.
+	 */
+	private final int flightId;
+	/**
+	 * The flight number of the flight.
+	 */
+	private final int flightNumber;
+	/**
+	 * The counts for each class of seat, by class.
+	 */
+	private final SortedMap<Integer, SeatClassOccupancy> classes =
+			new TreeMap<>();
+	/**
+	 * How many times the counts have been changed since they were loaded.
+	 */
+	private long version;
+	/**
+	 * How many changes are in transactions that have not yet finished, and so
+	 * may already be in the database without having been added to the counts.
+	 */
+	private int pending;
+	/**
+	 * Whether these counts have been dropped from memory, and so are no longer
+	 * kept up to date.
+	 */
+	private boolean forgotten;
+
+	/**
+	 * @param flightId     the ID of the flight
+	 * @param flightNumber the flight number of the flight
+	 * @param counts       the counts for each class of seat on the flight, as
+	 *                     just loaded from the database
+	 */
+	public FlightOccupancy(final int flightId, final int flightNumber,
+			final List<SeatClassOccupancy> counts) {
+		this.flightId = flightId;
+		this.flightNumber = flightNumber;
+		for (final SeatClassOccupancy count : counts) {
+			classes.put(count.getSeatClass(), count);
+		}
+	}
+
+	/**
+	 * @return the ID of the flight
+	 */
+	public int getFlightId() {
+		return flightId;
+	}
+
+	/**
+	 * @return the counts for each class of seat, in order of class
+	 */
+	public synchronized List<SeatClassOccupancy> getClasses() {
+		return new ArrayList<>(classes.values());
+	}
+
+	/**
+	 * @return how many times the counts have been changed since they were loaded
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Note that a transaction is about to change the counts, once it commits.
+	 * Until {@link #endChange()} is called, recounts are not accepted, since they
+	 * may have seen the change before it was added to the counts.
+	 */
+	public synchronized void beginChange() {
+		pending++;
+	}
+
+	/**
+	 * Note that a transaction that was going to change the counts has finished,
+	 * having either changed them or rolled back.
+	 */
+	public synchronized void endChange() {
+		pending--;
+	}
+
+	/**
+	 * Note that these counts have been dropped from memory, so no longer receive
+	 * changes and should not be reconciled.
+	 */
+	public synchronized void forget() {
+		forgotten = true;
+	}
+
+	/**
+	 * Change the counts for a class of seat.
+	 *
+	 * @param seatClass the class of seat
+	 * @param free      how many more seats nobody has reserved
+	 * @param held      how many more seats are reserved but not paid for
+	 * @param paid      how many more seats have been paid for
+	 * @param revenue   how much more has been paid for seats
+	 */
+	public synchronized void add(final int seatClass, final long free,
+			final long held, final long paid, final long revenue) {
+		classes.put(seatClass,
+				classes.getOrDefault(seatClass,
+						SeatClassOccupancy.empty(flightId, flightNumber, seatClass))
+						.plus(free, held, paid, revenue));
+		version++;
+	}
+
+	/**
+	 * Replace the counts with those just recounted from the database, unless they
+	 * have changed since the given version or a change to them is still pending
+	 * (in which case the recount may or may not have seen that change, and the
+	 * counts are left alone), or they have been dropped from memory.
+	 *
+	 * @param expected the version the counts had when the recount began
+	 * @param counted  the recounted counts for each class of seat on the flight
+	 * @return how much the counts of each class that disagreed with the recount
+	 *         exceeded it; empty if they all agreed, or if the recount was
+	 *         discarded
+	 */
+	public synchronized List<SeatClassOccupancy> reconcile(final long expected,
+			final List<SeatClassOccupancy> counted) {
+		final List<SeatClassOccupancy> drift = new ArrayList<>();
+		if (forgotten || version != expected || pending != 0) {
+			return drift;
+		}
+		final SortedMap<Integer, SeatClassOccupancy> recounted = new TreeMap<>();
+		for (final SeatClassOccupancy count : counted) {
+			recounted.put(count.getSeatClass(), count);
+		}
+		for (final Map.Entry<Integer, SeatClassOccupancy> entry : classes
+				.entrySet()) {
+			final SeatClassOccupancy difference = entry.getValue()
+					.minus(recounted.getOrDefault(entry.getKey(), SeatClassOccupancy
+							.empty(flightId, flightNumber, entry.getKey())));
+			if (!difference.isZero()) {
+				drift.add(difference);
+			}
+		}
+		for (final SeatClassOccupancy count : recounted.values()) {
+			if (!classes.containsKey(count.getSeatClass()) && !count.isZero()) {
+				drift.add(SeatClassOccupancy
+						.empty(flightId, flightNumber, count.getSeatClass())
+						.minus(count));
+			}
+		}
+		classes.clear();
+		classes.putAll(recounted);
+		return drift;
+	}
+}
@@ -0,0 +1,242 @@
+package com.sst.utopia.booking.service;
+
+import java.util.BitSet;
+import java.util.List;
+
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatStatus;
+
+/**
+ * The in-memory availability of every seat on a single flight. Seats are
+ * indexed by row and seat letter ('A' through 'Z'), and their state is kept in
+ * three bitsets (present, held, paid) plus one byte of seat class per seat, so
+ * even a large aircraft costs well under a kilobyte.
+ *
+ * Instances are safe for use by multiple threads.
+ *
+ * @author Jonathan Lovelace
+ */
+public final class FlightSeats {
+	/**
+	 * How many seat letters we allow for in each row.
+	 */
+	public static final int SEATS_PER_ROW = 26;
+	/**
+	 * The flight these seats are on.
+	 */
+	private final Flight flight;
+	/**
+	 * The highest row number on the flight.
+	 */
+	private final int maxRow;
+	/**
+	 * Which seat indexes exist on the flight.
+	 */
+	private final BitSet present;
+	/**
+	 * Which seats have been reserved but not paid for.
+	 */
+	private final BitSet held;
+	/**
+	 * Which seats have been reserved and paid for.
+	 */
+	private final BitSet paid;
+	/**
+	 * The class of each seat, by index.
+	 */
+	private final byte[] seatClasses;
+
+	/**
+	 * @param flight   the flight these seats are on
+	 * @param statuses the state of every seat on the flight, as just loaded from
+	 *                 the database
+	 */
+	public FlightSeats(final Flight flight, final List<SeatStatus> statuses) {
+		this.flight = flight;
+		int rows = 0;
+		for (final SeatStatus status : statuses) {
+			rows = Math.max(rows, status.getRow());
+		}
+		maxRow = rows;
+		final int capacity = (rows + 1) * SEATS_PER_ROW;
+		present = new BitSet(capacity);
+		held = new BitSet(capacity);
+		paid = new BitSet(capacity);
+		seatClasses = new byte[capacity];
+		for (final SeatStatus status : statuses) {
+			final int index = index(status.getRow(), status.getSeat());
+			if (index < 0) {
+				continue;
+			}
+			present.set(index);
+			seatClasses[index] = (byte) status.getSeatClass();
+			if (status.getPrice() != null) {
+				paid.set(index);
+			} else if (status.isReserved()) {
+				held.set(index);
+			}
+		}
+	}
+
+	/**
+	 * @param row  a row number
+	 * @param seat a seat within the row
+	 * @return the index of that seat in our bitsets, or -1 if the seat's name does
+	 *         not fit our row-and-letter scheme
+	 */
+	private int index(final int row, final String seat) {
+		if (row < 0 || row > maxRow || seat == null || seat.length() != 1) {
+			return -1;
+		}
+		final char letter = seat.charAt(0);
+		if (letter < 'A' || letter > 'Z') {
+			return -1;
+		}
+		return row * SEATS_PER_ROW + (letter - 'A');
+	}
+
+	/**
+	 * @return the flight these seats are on
+	 */
+	public Flight getFlight() {
+		return flight;
+	}
+
+	/**
+	 * @return the highest row number on the flight
+	 */
+	public int getMaxRow() {
+		return maxRow;
+	}
+
+	/**
+	 * @param row  a row number
+	 * @param seat a seat within the row
+	 * @return the state of that seat
+	 */
+	public synchronized SeatState getState(final int row, final String seat) {
+		final int index = index(row, seat);
+		if (index < 0 || !present.get(index)) {
+			return SeatState.UNKNOWN;
+		} else if (paid.get(index)) {
+			return SeatState.PAID;
+		} else if (held.get(index)) {
+			return SeatState.HELD;
+		} else {
+			return SeatState.FREE;
+		}
+	}
+
+	/**
+	 * @param row  a row number
+	 * @param seat a seat within the row
+	 * @return the class of that seat, or 0 if it is unknown
+	 */
+	public synchronized int getSeatClass(final int row, final String seat) {
+		final int index = index(row, seat);
+		if (index < 0 || !present.get(index)) {
+			return 0;
+		} else {
+			return seatClasses[index];
+		}
+	}
+
+	/**
+	 * Record that a seat has been reserved but not paid for.
+	 *
+	 * @param row  a row number
+	 * @param seat a seat within the row
+	 */
+	public synchronized void markHeld(final int row, final String seat) {
+		final int index = index(row, seat);
+		if (index >= 0 && present.get(index)) {
+			paid.clear(index);
+			held.set(index);
+		}
+	}
+
+	/**
+	 * Record that a seat has been paid for.
+	 *
+	 * @param row  a row number
+	 * @param seat a seat within the row
+	 */
+	public synchronized void markPaid(final int row, final String seat) {
+		final int index = index(row, seat);
+		if (index >= 0 && present.get(index)) {
+			held.clear(index);
+			paid.set(index);
+		}
+	}
+
+	/**
+	 * Record that a seat is no longer reserved.
+	 *
+	 * @param row  a row number
+	 * @param seat a seat within the row
+	 */
+	public synchronized void markFree(final int row, final String seat) {
+		final int index = index(row, seat);
+		if (index >= 0) {
+			held.clear(index);
+			paid.clear(index);
+		}
+	}
+
+	/**
+	 * @return how many seats on the flight are neither held nor paid for
+	 */
+	public synchronized int getFreeCount() {
+		return present.cardinality() - held.cardinality() - paid.cardinality();
+	}
+
+	/**
+	 * Render the availability of the flight's seats in a dense text form: one
+	 * line per row, consisting of the row number, a colon, and then one character
+	 * per seat letter from 'A' to the last seat in the row. That character is the
+	 * seat's class (a digit) if it is free, 'h' if it is held, 'p' if it is paid
+	 * for, and '-' if there is no such seat (or it is not of the requested
+	 * class). Rows without any seats are omitted.
+	 *
+	 * @param seatClass the class of seats to include, or null for all classes
+	 * @return the seat map
+	 */
+	public synchronized String render(final Integer seatClass) {
+		final StringBuilder builder =
+				new StringBuilder((maxRow + 1) * (SEATS_PER_ROW + 5));
+		for (int row = 0; row <= maxRow; row++) {
+			final int start = row * SEATS_PER_ROW;
+			int end = start + SEATS_PER_ROW - 1;
+			while (end >= start && !includes(end, seatClass)) {
+				end--;
+			}
+			if (end < start) {
+				continue;
+			}
+			builder.append(row).append(':');
+			for (int index = start; index <= end; index++) {
+				if (!includes(index, seatClass)) {
+					builder.append('-');
+				} else if (paid.get(index)) {
+					builder.append('p');
+				} else if (held.get(index)) {
+					builder.append('h');
+				} else {
+					builder.append((char) ('0' + seatClasses[index]));
+				}
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @param index     a seat index
+	 * @param seatClass the class of seats wanted, or null for all classes
+	 * @return whether that seat exists and is of that class
+	 */
+	private boolean includes(final int index, final Integer seatClass) {
+		return present.get(index)
+				&& (seatClass == null || seatClasses[index] == seatClass);
+	}
+}
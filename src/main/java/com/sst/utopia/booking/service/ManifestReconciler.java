@@ -0,0 +1,51 @@
+package com.sst.utopia.booking.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Background job that periodically recounts the occupancy of every flight in
+ * {@link FlightManifests} from the database, correcting (and counting) any
+ * drift, such as that caused by other instances of this service booking seats.
+ *
+ * Publishes the duration of each run as a metric.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+@ConditionalOnProperty(name = "utopia.manifest.reconcile.enabled", havingValue = "true")
+public class ManifestReconciler {
+	/**
+	 * The running counts to reconcile.
+	 */
+	@Autowired
+	private FlightManifests manifests;
+
+	/**
+	 * Timer for each run.
+	 */
+	private final Timer runs;
+
+	/**
+	 * @param registry the registry to publish metrics in
+	 */
+	@Autowired
+	public ManifestReconciler(final MeterRegistry registry) {
+		runs = registry.timer("utopia.manifest.reconcile.runs");
+	}
+
+	/**
+	 * Reconcile the running counts with the database.
+	 */
+	@Scheduled(fixedDelayString = "${utopia.manifest.reconcile.interval.ms}")
+	public void reconcile() {
+		runs.record(() -> {
+			manifests.reconcile();
+		});
+	}
+}
@@ -0,0 +1,33 @@
+package com.sst.utopia.booking.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.User;
+
+/**
+ * The original booking-ID generator: the MD5 hash of the flight number, seat,
+ * and user ID. The result is deterministic, so anyone who knows (or guesses)
+ * those can compute someone else's booking ID; it is kept only for clients that
+ * rely on that. Selected by setting "utopia.booking-id.generator" to "md5".
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+@ConditionalOnProperty(name = "utopia.booking-id.generator", havingValue = "md5")
+public class Md5BookingIdGenerator implements BookingIdGenerator {
+	/**
+	 * @param seat the seat being booked
+	 * @param user who it is being booked for
+	 * @return the booking ID
+	 */
+	@Override
+	public String generate(final SeatLocation seat, final User user) {
+		return DigestUtils.md5DigestAsHex(String
+				.format("%d %d %s %d", seat.getFlight().getFlightNumber(),
+						seat.getRow(), seat.getSeat(), user.getId())
+				.getBytes());
+	}
+}
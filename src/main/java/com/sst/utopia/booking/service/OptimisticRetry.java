@@ -0,0 +1,102 @@
+package com.sst.utopia.booking.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.persistence.OptimisticLockException;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.StaleStateException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Retries the booking service's read-modify-write operations (paying for,
+ * cancelling, and extending reservations) when they lose an optimistic-locking
+ * race on a ticket's version, after a short randomized exponential backoff.
+ * Each attempt runs in a fresh transaction, which is why this wraps the
+ * transaction rather than running inside it, and why a call made within an
+ * existing transaction is not retried here (it is left to whoever owns that
+ * transaction). Once the attempts are used up, the last failure is thrown.
+ *
+ * Publishes the number of retries, by operation, as a counter.
+ *
+ * @author Jonathan Lovelace
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class OptimisticRetry {
+	/**
+	 * The registry to publish metrics in.
+	 */
+	@Autowired
+	private MeterRegistry registry;
+
+	/**
+	 * The most attempts to make of each operation.
+	 */
+	@Value("${utopia.retry.max-attempts}")
+	private int maxAttempts;
+
+	/**
+	 * The backoff before the first retry, in milliseconds; it doubles for each
+	 * retry after that, and each actual wait is a random fraction of it.
+	 */
+	@Value("${utopia.retry.backoff-ms}")
+	private long backoffMillis;
+
+	/**
+	 * Run an operation, retrying it if it fails because of a concurrent change.
+	 *
+	 * @param call the call to the operation
+	 * @return what the operation returned
+	 * @throws Throwable whatever the operation threw, the last time
+	 */
+	@Around("execution(* com.sst.utopia.booking.service.BookingService.acceptPayment(..))"
+			+ " || execution(* com.sst.utopia.booking.service.BookingService.cancelPendingReservation(..))"
+			+ " || execution(* com.sst.utopia.booking.service.BookingService.extendReservationTimeout(..))")
+	public Object retry(final ProceedingJoinPoint call) throws Throwable {
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			return call.proceed();
+		}
+		long backoff = backoffMillis;
+		for (int attempt = 1;; attempt++) {
+			try {
+				return call.proceed();
+			} catch (final RuntimeException except) {
+				if (attempt >= maxAttempts || !isConflict(except)) {
+					throw except;
+				}
+			}
+			registry.counter("utopia.booking.retries", "operation",
+					call.getSignature().getName()).increment();
+			Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+			backoff *= 2;
+		}
+	}
+
+	/**
+	 * @param except an exception
+	 * @return whether it (or anything that caused it) reports an
+	 *         optimistic-locking failure
+	 */
+	private static boolean isConflict(final Throwable except) {
+		for (Throwable cause = except; cause != null; cause = cause.getCause()) {
+			if (cause instanceof OptimisticLockingFailureException
+					|| cause instanceof OptimisticLockException
+					|| cause instanceof StaleStateException) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,115 @@
+package com.sst.utopia.booking.service;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.User;
+
+/**
+ * The default booking-ID generator: 128 bits from a cryptographically strong
+ * random-number generator, written as 22 URL-safe base-64 characters. Booking
+ * IDs are thus unpredictable, and the chance of two ever colliding is
+ * negligible. A small, fixed set of generators is created (and seeded) once and
+ * shared, each call picking one at random, so threads booking at once seldom
+ * contend for the same one's lock, and a thread that only books once (such as a
+ * virtual thread per request) costs no new generator. Selected by setting
+ * "utopia.booking-id.generator" to "random".
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+@ConditionalOnProperty(name = "utopia.booking-id.generator", havingValue = "random",
+		matchIfMissing = true)
+public class RandomBookingIdGenerator implements BookingIdGenerator {
+	/**
+	 * The URL-safe base-64 alphabet.
+	 */
+	private static final char[] ALPHABET =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+					.toCharArray();
+
+	/**
+	 * How many characters each 64-bit half of the ID is written as.
+	 */
+	private static final int CHARS_PER_LONG = 11;
+
+	/**
+	 * The shared random-number generators: a power of two, at least as many as
+	 * there are processors.
+	 */
+	private final SecureRandom[] generators;
+
+	/**
+	 * Create and seed the generators.
+	 */
+	public RandomBookingIdGenerator() {
+		generators = new SecureRandom[Integer.highestOneBit(
+				Runtime.getRuntime().availableProcessors() * 2 - 1)];
+		for (int i = 0; i < generators.length; i++) {
+			generators[i] = createRandom();
+		}
+	}
+
+	/**
+	 * @return a new, self-seeded, cryptographically strong random-number
+	 *         generator that does not share a lock with any other instance
+	 */
+	private static SecureRandom createRandom() {
+		try {
+			return SecureRandom.getInstance("SHA1PRNG");
+		} catch (final NoSuchAlgorithmException except) {
+			// Every Java platform is required to provide SHA1PRNG.
+			throw new IllegalStateException(except);
+		}
+	}
+
+	/**
+	 * @param seat the seat being booked (ignored)
+	 * @param user who it is being booked for (ignored)
+	 * @return a new random booking ID
+	 */
+	@Override
+	public String generate(final SeatLocation seat, final User user) {
+		final SecureRandom generator = generators[ThreadLocalRandom.current()
+				.nextInt() & (generators.length - 1)];
+		final byte[] bytes = new byte[2 * Long.BYTES];
+		generator.nextBytes(bytes);
+		final char[] chars = new char[2 * CHARS_PER_LONG];
+		encode(toLong(bytes, 0), chars, 0);
+		encode(toLong(bytes, Long.BYTES), chars, CHARS_PER_LONG);
+		return new String(chars);
+	}
+
+	/**
+	 * @param bytes  an array of bytes
+	 * @param offset where in the array to start
+	 * @return the eight bytes starting there, as a number, most significant first
+	 */
+	private static long toLong(final byte[] bytes, final int offset) {
+		long bits = 0;
+		for (int i = 0; i < Long.BYTES; i++) {
+			bits = (bits << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return bits;
+	}
+
+	/**
+	 * Write 64 bits as base-64 characters, most significant first.
+	 *
+	 * @param bits   the bits to write
+	 * @param chars  the array to write them into
+	 * @param offset where in the array to start
+	 */
+	private static void encode(final long bits, final char[] chars,
+			final int offset) {
+		for (int i = 0; i < CHARS_PER_LONG; i++) {
+			final int shift = 6 * (CHARS_PER_LONG - 1 - i);
+			chars[offset + i] = ALPHABET[(int) (bits >>> shift) & 63];
+		}
+	}
+}
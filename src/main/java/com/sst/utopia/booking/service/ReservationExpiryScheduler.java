@@ -0,0 +1,241 @@
+package com.sst.utopia.booking.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.sst.utopia.booking.model.SeatKey;
+import com.sst.utopia.booking.model.SeatLocation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Releases each unpaid reservation within a tick (a second, by default) of its
+ * timeout, without polling the ticket table. Every reservation the booking
+ * service makes or extends is registered in a {@link TimingWheel}, and a
+ * single background thread advances the wheel once per tick and releases
+ * whatever has come due. On startup, the wheel is rebuilt from the database
+ * with a single streaming query.
+ *
+ * Only the most recent deadline registered for each seat counts, so extending
+ * a reservation simply registers it again. Releasing is always conditional on
+ * the reservation still being unpaid and expired in the database, so a stale
+ * entry (for example, for a seat paid for on another instance) does no harm;
+ * {@link ReservationSweeper} remains as a safety net.
+ *
+ * If releasing the seats that have come due fails, the failure is logged and
+ * counted (in "utopia.expiry.failures", by seat), and those seats are tried
+ * again after a configured delay unless they have been registered again in
+ * the meantime.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+public class ReservationExpiryScheduler {
+	/**
+	 * How many buckets each level of the wheel has.
+	 */
+	private static final int WHEEL_SIZE = 64;
+
+	/**
+	 * Logger.
+	 */
+	private static final Logger LOGGER =
+			LoggerFactory.getLogger(ReservationExpiryScheduler.class);
+
+	/**
+	 * Service class that does the actual releasing.
+	 */
+	@Lazy
+	@Autowired
+	private BookingService service;
+
+	/**
+	 * Whether exact-time expiry is enabled at all.
+	 */
+	@Value("${utopia.expiry.wheel.enabled}")
+	private boolean enabled;
+
+	/**
+	 * The width of a tick, in milliseconds.
+	 */
+	@Value("${utopia.expiry.wheel.tick-ms}")
+	private long tickMillis;
+
+	/**
+	 * How long, in milliseconds, to wait before trying again to release seats
+	 * whose release failed.
+	 */
+	@Value("${utopia.expiry.wheel.retry-ms}")
+	private long retryMillis;
+
+	/**
+	 * The registry to publish metrics in.
+	 */
+	@Autowired
+	private MeterRegistry registry;
+
+	/**
+	 * Count of seats whose release failed; null until we have started.
+	 */
+	private Counter failures;
+
+	/**
+	 * The time zone reservation timeouts are expressed in.
+	 */
+	private final ZoneId zone = ZoneId.systemDefault();
+
+	/**
+	 * The most recent deadline registered for each seat, in milliseconds since
+	 * the epoch.
+	 */
+	private final ConcurrentMap<SeatKey, Long> deadlines =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * The wheel; null until we have started.
+	 */
+	private volatile TimingWheel<SeatLocation> wheel;
+
+	/**
+	 * The thread that advances the wheel.
+	 */
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Rebuild the wheel from the database and start advancing it.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		failures = Counter.builder("utopia.expiry.failures")
+				.description("Seats whose exact-time release failed and was retried")
+				.register(registry);
+		wheel = new TimingWheel<>(tickMillis, WHEEL_SIZE,
+				System.currentTimeMillis());
+		service.forEachPendingReservation(this::schedule);
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "reservation-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop advancing the wheel.
+	 */
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Once the current transaction commits, register a reservation's timeout,
+	 * replacing any previous one for that seat.
+	 *
+	 * @param seat    the reserved seat
+	 * @param timeout when the reservation expires if not paid for
+	 */
+	public void register(final SeatLocation seat, final LocalDateTime timeout) {
+		if (enabled) {
+			AfterCommit.run(() -> schedule(seat, timeout));
+		}
+	}
+
+	/**
+	 * Once the current transaction commits, forget a seat's reservation timeout,
+	 * because it has been paid for or cancelled.
+	 *
+	 * @param seat the seat
+	 */
+	public void unregister(final SeatLocation seat) {
+		if (enabled) {
+			AfterCommit.run(() -> deadlines.remove(SeatKey.of(seat)));
+		}
+	}
+
+	/**
+	 * @return how many reservations are waiting to expire
+	 */
+	public int getPendingCount() {
+		return deadlines.size();
+	}
+
+	/**
+	 * Register a reservation's timeout now.
+	 *
+	 * @param seat    the reserved seat
+	 * @param timeout when the reservation expires if not paid for
+	 */
+	private void schedule(final SeatLocation seat, final LocalDateTime timeout) {
+		final TimingWheel<SeatLocation> current = wheel;
+		if (current != null) {
+			final long deadline = timeout.atZone(zone).toInstant().toEpochMilli();
+			deadlines.put(SeatKey.of(seat), deadline);
+			current.schedule(seat, deadline);
+		}
+	}
+
+	/**
+	 * Advance the wheel and release whatever has come due.
+	 */
+	private void tick() {
+		final List<SeatLocation> due = new ArrayList<>();
+		for (final TimingWheel.Entry<SeatLocation> entry : wheel
+				.advance(System.currentTimeMillis())) {
+			if (deadlines.remove(SeatKey.of(entry.getKey()), entry.getDeadline())) {
+				due.add(entry.getKey());
+			}
+		}
+		if (!due.isEmpty()) {
+			try {
+				service.releaseExpiredReservations(due, LocalDateTime.now());
+			} catch (final RuntimeException except) {
+				// Don't kill the timer thread; try these seats again later.
+				LOGGER.warn("Failed to release {} expired reservations; retrying in {} ms",
+						due.size(), retryMillis, except);
+				failures.increment(due.size());
+				retry(due, System.currentTimeMillis() + retryMillis);
+			}
+		}
+	}
+
+	/**
+	 * Schedule seats whose release failed to be released again, except those
+	 * registered again (extended, or booked anew) in the meantime.
+	 *
+	 * @param seats    the seats
+	 * @param deadline when to try again, in milliseconds since the epoch
+	 */
+	private void retry(final List<SeatLocation> seats, final long deadline) {
+		for (final SeatLocation seat : seats) {
+			if (deadlines.putIfAbsent(SeatKey.of(seat), deadline) == null) {
+				wheel.schedule(seat, deadline);
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.sst.utopia.booking.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Background job that releases unpaid reservations once their timeouts have
+ * passed, so the seats go back on sale without waiting for a client to cancel
+ * them. Each run releases expired reservations in batches (each its own
+ * transaction and bulk UPDATE) until none are left or the per-run limit is
+ * reached.
+ *
+ * Publishes the number of seats released, the duration of each run, and the
+ * lag (how long ago the oldest not-yet-released reservation expired) as
+ * metrics.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+@ConditionalOnProperty(name = "utopia.sweeper.enabled", havingValue = "true")
+public class ReservationSweeper {
+	/**
+	 * Service class that does the actual releasing.
+	 */
+	@Autowired
+	private BookingService service;
+
+	/**
+	 * How many reservations to release per transaction.
+	 */
+	@Value("${utopia.sweeper.batch-size}")
+	private int batchSize;
+
+	/**
+	 * The most batches to release in a single run.
+	 */
+	@Value("${utopia.sweeper.max-batches}")
+	private int maxBatches;
+
+	/**
+	 * Count of seats released.
+	 */
+	private final Counter released;
+
+	/**
+	 * Timer for each run.
+	 */
+	private final Timer runs;
+
+	/**
+	 * How many seconds ago the oldest unreleased expired reservation expired, as
+	 * of the start of the last run.
+	 */
+	private final AtomicLong lag;
+
+	/**
+	 * @param registry the registry to publish metrics in
+	 */
+	@Autowired
+	public ReservationSweeper(final MeterRegistry registry) {
+		released = registry.counter("utopia.sweeper.released");
+		runs = registry.timer("utopia.sweeper.runs");
+		lag = registry.gauge("utopia.sweeper.lag.seconds", Tags.empty(),
+				new AtomicLong());
+	}
+
+	/**
+	 * Release expired reservations.
+	 */
+	@Scheduled(fixedDelayString = "${utopia.sweeper.interval.ms}")
+	public void sweep() {
+		runs.record(() -> {
+			final LocalDateTime now = LocalDateTime.now();
+			lag.set(service.getOldestExpiredReservation(now)
+					.map(oldest -> Duration.between(oldest, now).getSeconds())
+					.orElse(0L));
+			for (int i = 0; i < maxBatches; i++) {
+				final int count = service.releaseExpiredReservations(now, batchSize);
+				released.increment(count);
+				if (count < batchSize) {
+					break;
+				}
+			}
+		});
+	}
+}
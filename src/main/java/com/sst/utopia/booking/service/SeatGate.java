@@ -0,0 +1,103 @@
+package com.sst.utopia.booking.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.sst.utopia.booking.model.SeatKey;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A single-flight gate in front of booking individual seats, so that when many
+ * requests on this instance go after the same seat at once, only one of them
+ * goes to the database. The rest wait for it; if it booked the seat, or found
+ * the seat already booked, they fail at once without touching the database
+ * ("shed"), and otherwise (if it failed for some other reason) they go on to
+ * try for themselves, again one at a time.
+ *
+ * This only coordinates requests within one instance; the conditional update
+ * in the booking service is still what prevents double-booking.
+ *
+ * Publishes the number of requests shed as a counter.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+public class SeatGate {
+	/**
+	 * How an attempt to book a seat turned out.
+	 */
+	private enum Outcome {
+		/**
+		 * The seat was booked, or was already booked; either way, it is taken.
+		 */
+		TAKEN,
+		/**
+		 * The attempt failed for some other reason.
+		 */
+		FAILED
+	}
+
+	/**
+	 * The outcome of the attempt in progress for each seat being booked.
+	 */
+	private final ConcurrentMap<SeatKey, CompletableFuture<Outcome>> inFlight =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Count of requests failed without going to the database.
+	 */
+	private final Counter shed;
+
+	/**
+	 * @param registry the registry to publish metrics in
+	 */
+	@Autowired
+	public SeatGate(final MeterRegistry registry) {
+		shed = registry.counter("utopia.booking.shed");
+	}
+
+	/**
+	 * Try to book a seat, unless another request on this instance is already
+	 * doing so, in which case wait for that to finish and fail if it took the
+	 * seat.
+	 *
+	 * @param <T>     the type of the booking
+	 * @param seat    the key of the seat to book
+	 * @param booking the attempt to book the seat, which should throw
+	 *                {@link IllegalArgumentException} if the seat is already
+	 *                booked
+	 * @return the booking
+	 * @throws IllegalArgumentException if the seat is already booked, or another
+	 *                                  request booked it first
+	 */
+	public <T> T book(final SeatKey seat, final Supplier<T> booking) {
+		while (true) {
+			final CompletableFuture<Outcome> mine = new CompletableFuture<>();
+			final CompletableFuture<Outcome> leader = inFlight.putIfAbsent(seat, mine);
+			if (leader == null) {
+				Outcome outcome = Outcome.FAILED;
+				try {
+					final T result = booking.get();
+					outcome = Outcome.TAKEN;
+					return result;
+				} catch (final IllegalArgumentException except) {
+					outcome = Outcome.TAKEN;
+					throw except;
+				} finally {
+					inFlight.remove(seat, mine);
+					mine.complete(outcome);
+				}
+			} else if (leader.join() == Outcome.TAKEN) {
+				shed.increment();
+				throw new IllegalArgumentException("Ticket already reserved");
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package com.sst.utopia.booking.service;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * In-memory seat availability for recently-used flights, loaded lazily (one
+ * query per flight) on first use and kept up to date by the booking service as
+ * it books, pays for, and releases seats. Changes are only applied once the
+ * transaction making them commits. At most a configured number of flights are
+ * kept, and each is dropped (to be reloaded on next use, picking up changes
+ * made by other instances of this service) a configured time after it was
+ * loaded.
+ *
+ * A load that races a change to the same flight is not kept, so it cannot
+ * replace the change with its older snapshot. Changes made by other instances
+ * are only seen once the flight is reloaded, so the state here may be stale.
+ * The database therefore remains the authority on who holds which seat. The
+ * booking service always claims a seat there; it only asks this whether a seat
+ * it failed to claim exists at all.
+ *
+ * Publishes the number of free seats on each loaded flight (for only as long
+ * as it stays loaded), and the number of outstanding unpaid reservations on
+ * all flights (recounted at most once per configured interval), as gauges.
+ *
+ * @author Jonathan Lovelace
+ */
+@Component
+public class SeatInventory {
+	/**
+	 * The name of the gauge of each loaded flight's free seats.
+	 */
+	private static final String FREE_GAUGE = "utopia.flight.seats.free";
+	/**
+	 * How many stripes of change counters flights share. Must be a power of two.
+	 */
+	private static final int EPOCH_STRIPES = 64;
+	/**
+	 * DAO to access ticket table.
+	 */
+	@Autowired
+	private TicketDao ticketDao;
+
+	/**
+	 * The registry to publish metrics in.
+	 */
+	@Autowired
+	private MeterRegistry registry;
+
+	/**
+	 * The seats of each flight we have loaded, by flight ID: a view of a bounded
+	 * cache.
+	 */
+	private final ConcurrentMap<Integer, FlightSeats> flights;
+	/**
+	 * How many changes have been made to the flights in each stripe (by flight
+	 * ID), so a load can tell whether one raced it.
+	 */
+	private final AtomicLongArray epochs = new AtomicLongArray(EPOCH_STRIPES);
+
+	/**
+	 * How long, in nanoseconds, to report the count of outstanding unpaid
+	 * reservations before counting them again.
+	 */
+	private final long holdsRefreshNanos;
+	/**
+	 * The count of outstanding unpaid reservations when last counted.
+	 */
+	private volatile long holds;
+	/**
+	 * When, by {@link System#nanoTime()}, the outstanding unpaid reservations
+	 * should next be counted.
+	 */
+	private volatile long holdsDue = System.nanoTime();
+
+	/**
+	 * @param maximumSize         the most flights to keep the seats of
+	 * @param refreshSeconds      how long, in seconds, to trust a flight's seats
+	 *                            before reloading them
+	 * @param holdsRefreshSeconds how long, in seconds, to report the count of
+	 *                            outstanding unpaid reservations before counting
+	 *                            them again
+	 */
+	public SeatInventory(
+			@Value("${utopia.inventory.maximum-size}") final long maximumSize,
+			@Value("${utopia.inventory.refresh.seconds}") final long refreshSeconds,
+			@Value("${utopia.inventory.holds.refresh.seconds}") final long holdsRefreshSeconds) {
+		flights = Caffeine.newBuilder().maximumSize(maximumSize)
+				.expireAfterWrite(refreshSeconds, TimeUnit.SECONDS)
+				.writer(new GaugeWriter()).<Integer, FlightSeats>build().asMap();
+		holdsRefreshNanos = TimeUnit.SECONDS.toNanos(holdsRefreshSeconds);
+	}
+
+	/**
+	 * Publish the count of outstanding unpaid reservations, which (unlike the
+	 * per-flight gauges) comes from the database.
+	 */
+	@PostConstruct
+	public void registerGauges() {
+		Gauge.builder("utopia.booking.holds.outstanding", this,
+				SeatInventory::countHolds)
+				.description("Seats reserved but not yet paid for")
+				.register(registry);
+	}
+
+	/**
+	 * Count the outstanding unpaid reservations on all flights, unless we have
+	 * done so recently; the query has to scan the ticket table, so should not be
+	 * run on every scrape of the gauge.
+	 *
+	 * @return the count when last counted
+	 */
+	private double countHolds() {
+		final long now = System.nanoTime();
+		if (now - holdsDue >= 0) {
+			holdsDue = now + holdsRefreshNanos;
+			holds = ticketDao.countByReserverIsNotNullAndPriceIsNull();
+		}
+		return holds;
+	}
+
+	/**
+	 * Keeps a gauge of the free seats of each flight registered while, and only
+	 * while, the flight's seats are loaded. Caffeine calls this atomically with
+	 * the change to the flight's entry, so registering and removing a flight's
+	 * gauge cannot race.
+	 */
+	private final class GaugeWriter implements CacheWriter<Integer, FlightSeats> {
+		/**
+		 * Register the gauge for a flight whose seats have been loaded. Registering
+		 * an existing gauge again is a no-op.
+		 */
+		@Override
+		public void write(final Integer flightId, final FlightSeats seats) {
+			Gauge.builder(FREE_GAUGE, flights, map -> freeCount(map, flightId))
+					.description("Seats neither reserved nor paid for")
+					.tag("flight", Integer.toString(seats.getFlight().getFlightNumber()))
+					.register(registry);
+		}
+
+		/**
+		 * Remove the gauge for a flight whose seats have been dropped.
+		 */
+		@Override
+		public void delete(final Integer flightId, final FlightSeats seats,
+				final RemovalCause cause) {
+			final Gauge gauge = registry.find(FREE_GAUGE).tag("flight",
+					Integer.toString(seats.getFlight().getFlightNumber())).gauge();
+			if (gauge != null) {
+				registry.remove(gauge);
+			}
+		}
+	}
+
+	/**
+	 * Get the seats of a flight, loading them if we have not yet done so or if
+	 * our copy is out of date (and so has been dropped). A load is only kept if
+	 * no change to the flight (or another in its stripe) was applied while it
+	 * ran, since the query may or may not have seen that change; otherwise it is
+	 * returned to this caller but not kept.
+	 *
+	 * @param flight a flight
+	 * @return the availability of its seats
+	 */
+	public FlightSeats getSeats(final Flight flight) {
+		final FlightSeats cached = flights.get(flight.getId());
+		if (cached != null) {
+			return cached;
+		}
+		final int stripe = stripe(flight.getId());
+		final long epoch = epochs.get(stripe);
+		final FlightSeats loaded =
+				new FlightSeats(flight, ticketDao.findSeatStatuses(flight));
+		if (epochs.get(stripe) != epoch) {
+			return loaded;
+		}
+		final FlightSeats raced = flights.putIfAbsent(flight.getId(), loaded);
+		if (raced != null) {
+			return raced;
+		}
+		// A change that counted itself after the check above may have looked for
+		// the flight before it was put, and so not been applied to it.
+		if (epochs.get(stripe) != epoch) {
+			flights.remove(flight.getId(), loaded);
+		}
+		return loaded;
+	}
+
+	/**
+	 * @param flightId a flight ID
+	 * @return the stripe of change counters it belongs to
+	 */
+	private static int stripe(final int flightId) {
+		return flightId & (EPOCH_STRIPES - 1);
+	}
+
+	/**
+	 * @param map      the seats of each flight we have loaded
+	 * @param flightId a flight ID
+	 * @return how many of the flight's seats are free, or NaN if it is not loaded
+	 */
+	private static double freeCount(final ConcurrentMap<Integer, FlightSeats> map,
+			final int flightId) {
+		final FlightSeats seats = map.get(flightId);
+		return seats == null ? Double.NaN : seats.getFreeCount();
+	}
+
+	/**
+	 * @param seat a seat on a flight
+	 * @return the state of that seat
+	 */
+	public SeatState getState(final SeatLocation seat) {
+		return getSeats(seat.getFlight()).getState(seat.getRow(), seat.getSeat());
+	}
+
+	/**
+	 * Seats are never removed once provisioned, so this (unlike whether a seat is
+	 * taken) cannot be made wrong by a change the inventory has not seen.
+	 *
+	 * @param seat a seat on a flight
+	 * @return whether that seat is known to exist
+	 */
+	public boolean isKnown(final SeatLocation seat) {
+		return getState(seat) != SeatState.UNKNOWN;
+	}
+
+	/**
+	 * Forget what we know about a flight's seats, so they are reloaded from the
+	 * database the next time they are asked about.
+	 *
+	 * @param flight a flight
+	 */
+	public void invalidate(final Flight flight) {
+		epochs.incrementAndGet(stripe(flight.getId()));
+		flights.remove(flight.getId());
+	}
+
+	/**
+	 * Record, once the current transaction commits, that a seat has been reserved.
+	 *
+	 * @param seat the seat
+	 */
+	public void markHeld(final SeatLocation seat) {
+		afterCommit(seat, seats -> seats.markHeld(seat.getRow(), seat.getSeat()));
+	}
+
+	/**
+	 * Record, once the current transaction commits, that a seat has been paid
+	 * for.
+	 *
+	 * @param seat the seat
+	 */
+	public void markPaid(final SeatLocation seat) {
+		afterCommit(seat, seats -> seats.markPaid(seat.getRow(), seat.getSeat()));
+	}
+
+	/**
+	 * Record, once the current transaction commits, that a seat is no longer
+	 * reserved.
+	 *
+	 * @param seat the seat
+	 */
+	public void markFree(final SeatLocation seat) {
+		afterCommit(seat, seats -> seats.markFree(seat.getRow(), seat.getSeat()));
+	}
+
+	/**
+	 * Run an update to a flight's seats if we have them loaded, after the current
+	 * transaction (if any) commits.
+	 *
+	 * @param seat   the seat being updated
+	 * @param update the update to run
+	 */
+	private void afterCommit(final SeatLocation seat,
+			final Consumer<FlightSeats> update) {
+		AfterCommit.run(() -> {
+			epochs.incrementAndGet(stripe(seat.getFlight().getId()));
+			final FlightSeats seats = flights.get(seat.getFlight().getId());
+			if (seats != null) {
+				update.accept(seats);
+			}
+		});
+	}
+}
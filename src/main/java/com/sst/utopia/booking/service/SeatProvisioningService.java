@@ -0,0 +1,163 @@
+package com.sst.utopia.booking.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sst.utopia.booking.dao.TicketBatchDao;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.ProvisioningReport;
+import com.sst.utopia.booking.model.ScheduledFlight;
+import com.sst.utopia.booking.model.SeatLayout;
+
+/**
+ * Service to create the seats (tickets) for new flights from the layout of the
+ * aircraft flying them, one flight at a time or for a whole schedule.
+ *
+ * Seats are inserted with JDBC batches rather than through JPA, and a schedule
+ * is read and provisioned one flight at a time, each in its own transaction, so
+ * memory use stays flat however large the schedule is. A flight that already
+ * has seats is left alone, so a schedule that was only partly provisioned can
+ * simply be submitted again.
+ *
+ * @author Jonathan Lovelace
+ */
+@Service
+public class SeatProvisioningService {
+	/**
+	 * DAO for bulk operations on the ticket table.
+	 */
+	private final TicketBatchDao ticketBatchDao;
+	/**
+	 * Cache of flights by flight number.
+	 */
+	private final FlightCache flightCache;
+	/**
+	 * In-memory seat availability, which must forget a flight once its seats
+	 * are created.
+	 */
+	private final SeatInventory inventory;
+	/**
+	 * Running occupancy counts, which must likewise forget a flight once its
+	 * seats are created.
+	 */
+	private final FlightManifests manifests;
+	/**
+	 * Reads schedule entries.
+	 */
+	private final ObjectReader scheduleReader;
+	/**
+	 * Runs each flight's inserts in a transaction of its own.
+	 */
+	private final TransactionTemplate transaction;
+	/**
+	 * How many seats to insert per JDBC batch.
+	 */
+	private final int batchSize;
+
+	/**
+	 * @param ticketBatchDao     DAO for bulk operations on the ticket table
+	 * @param flightCache        cache of flights by flight number
+	 * @param inventory          in-memory seat availability
+	 * @param manifests          running occupancy counts
+	 * @param objectMapper       JSON mapper
+	 * @param transactionManager the transaction manager
+	 * @param batchSize          how many seats to insert per JDBC batch
+	 */
+	@Autowired
+	public SeatProvisioningService(final TicketBatchDao ticketBatchDao,
+			final FlightCache flightCache, final SeatInventory inventory,
+			final FlightManifests manifests,
+			final ObjectMapper objectMapper,
+			final PlatformTransactionManager transactionManager,
+			@Value("${utopia.provisioning.batch-size}") final int batchSize) {
+		this.ticketBatchDao = ticketBatchDao;
+		this.flightCache = flightCache;
+		this.inventory = inventory;
+		this.manifests = manifests;
+		scheduleReader = objectMapper.readerFor(ScheduledFlight.class);
+		transaction = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Create all the seats on a flight.
+	 *
+	 * @param flightNumber the flight number of the flight
+	 * @param layout       the layout of its seats
+	 * @return how many seats were created
+	 * @throws NoSuchElementException   if there is no such flight
+	 * @throws IllegalArgumentException if the layout is invalid
+	 * @throws IllegalStateException    if the flight already has seats
+	 */
+	public int provision(final int flightNumber, final SeatLayout layout) {
+		final Flight flight = flightCache.get(flightNumber);
+		if (flight == null) {
+			throw new NoSuchElementException("No such flight");
+		}
+		layout.validate();
+		try {
+			return transaction.execute(status -> {
+				final int count = ticketBatchDao.insertSeats(flight, layout, batchSize);
+				AfterCommit.run(() -> {
+					inventory.invalidate(flight);
+					manifests.invalidate(flight);
+				});
+				return count;
+			});
+		} catch (final DataIntegrityViolationException except) {
+			throw new IllegalStateException("Flight already has seats", except);
+		}
+	}
+
+	/**
+	 * Create the seats on every flight in a schedule, read as a stream of JSON
+	 * {@link ScheduledFlight} objects (one per line, say). Each flight is
+	 * provisioned in its own transaction; an entry for an unknown flight, with an
+	 * invalid layout, or for a flight that already has seats is skipped and
+	 * reported.
+	 *
+	 * @param schedule the schedule
+	 * @return what was done
+	 * @throws IllegalArgumentException if the schedule is malformed; the flights
+	 *                                  before the malformed entry have been
+	 *                                  provisioned
+	 * @throws IOException              on I/O error reading the schedule
+	 */
+	public ProvisioningReport provisionSchedule(final InputStream schedule)
+			throws IOException {
+		final ProvisioningReport report = new ProvisioningReport();
+		int entry = 0;
+		try (MappingIterator<ScheduledFlight> iterator =
+				scheduleReader.readValues(schedule)) {
+			while (iterator.hasNextValue()) {
+				final ScheduledFlight flight = iterator.nextValue();
+				entry++;
+				try {
+					report.addFlight(provision(flight.getFlight(),
+							flight.getLayout() == null ? new SeatLayout()
+									: flight.getLayout()));
+				} catch (final NoSuchElementException | IllegalArgumentException
+						| IllegalStateException except) {
+					report.addSkipped(String.format("Entry %d (flight %d): %s", entry,
+							flight.getFlight(), except.getMessage()));
+				}
+			}
+		} catch (final JsonProcessingException except) {
+			throw new IllegalArgumentException(
+					String.format("Malformed schedule after entry %d", entry), except);
+		}
+		return report;
+	}
+}
@@ -0,0 +1,26 @@
+package com.sst.utopia.booking.service;
+
+/**
+ * The booking state of a seat as known to the in-memory seat inventory.
+ *
+ * @author Jonathan Lovelace
+ */
+public enum SeatState {
+	/**
+	 * Nobody has reserved the seat.
+	 */
+	FREE,
+	/**
+	 * Someone has reserved the seat but not yet paid for it.
+	 */
+	HELD,
+	/**
+	 * Someone has reserved and paid for the seat.
+	 */
+	PAID,
+	/**
+	 * The inventory does not track this seat (it is not in the database, or its
+	 * name does not fit the row-and-letter scheme the inventory is indexed by).
+	 */
+	UNKNOWN
+}
@@ -0,0 +1,148 @@
+package com.sst.utopia.booking.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.TicketExportRow;
+
+/**
+ * Service to export tickets, for downstream reporting, as newline-delimited
+ * JSON or CSV.
+ *
+ * Tickets are read through a forward-only cursor and written out as they are
+ * read, so an export of any size runs in constant memory. Each export runs in
+ * a read-only, read-committed transaction, so it takes no locks and (on MySQL)
+ * does not hold a snapshot open for its whole duration.
+ *
+ * @author Jonathan Lovelace
+ */
+@Service
+public class TicketExportService {
+	/**
+	 * The formats tickets can be exported in.
+	 */
+	public enum Format {
+		/**
+		 * One JSON object per line.
+		 */
+		NDJSON,
+		/**
+		 * Comma-separated values, with a header line.
+		 */
+		CSV
+	}
+
+	/**
+	 * DAO to access ticket table.
+	 */
+	private final TicketDao ticketDao;
+	/**
+	 * Writes each row as JSON.
+	 */
+	private final ObjectWriter jsonWriter;
+	/**
+	 * Runs each export in a transaction.
+	 */
+	private final TransactionTemplate transaction;
+
+	/**
+	 * @param ticketDao          DAO to access ticket table
+	 * @param objectMapper       JSON mapper
+	 * @param transactionManager the transaction manager
+	 */
+	@Autowired
+	public TicketExportService(final TicketDao ticketDao,
+			final ObjectMapper objectMapper,
+			final PlatformTransactionManager transactionManager) {
+		this.ticketDao = ticketDao;
+		jsonWriter = objectMapper.writerFor(TicketExportRow.class);
+		transaction = new TransactionTemplate(transactionManager);
+		transaction.setReadOnly(true);
+		transaction
+				.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+	}
+
+	/**
+	 * Write every ticket on a flight.
+	 *
+	 * @param flight the flight
+	 * @param format the format to write them in
+	 * @param out    where to write them
+	 * @throws IOException on I/O error writing
+	 */
+	public void exportFlight(final Flight flight, final Format format,
+			final OutputStream out) throws IOException {
+		export(() -> ticketDao.streamExport(flight), format, out);
+	}
+
+	/**
+	 * Write every ticket on the flights departing in a range of time.
+	 *
+	 * @param from   the start of the range
+	 * @param to     the end of the range (exclusive)
+	 * @param format the format to write them in
+	 * @param out    where to write them
+	 * @throws IOException on I/O error writing
+	 */
+	public void exportDepartures(final LocalDateTime from,
+			final LocalDateTime to, final Format format, final OutputStream out)
+			throws IOException {
+		export(() -> ticketDao.streamExportDepartingBetween(from, to), format, out);
+	}
+
+	/**
+	 * Write tickets as they are read.
+	 *
+	 * @param query  the query to read them with
+	 * @param format the format to write them in
+	 * @param out    where to write them; flushed, but not closed
+	 * @throws IOException on I/O error writing
+	 */
+	private void export(final Supplier<Stream<TicketExportRow>> query,
+			final Format format, final OutputStream out) throws IOException {
+		final Writer writer = new BufferedWriter(
+				new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		if (format == Format.CSV) {
+			writer.write(TicketExportRow.CSV_HEADER);
+			writer.write('\n');
+		}
+		try {
+			transaction.execute(status -> {
+				try (Stream<TicketExportRow> rows = query.get()) {
+					final Iterator<TicketExportRow> iterator = rows.iterator();
+					while (iterator.hasNext()) {
+						final TicketExportRow row = iterator.next();
+						writer.write(format == Format.CSV ? row.toCsv()
+								: jsonWriter.writeValueAsString(row));
+						writer.write('\n');
+					}
+				} catch (final IOException except) {
+					throw new UncheckedIOException(except);
+				}
+				return null;
+			});
+		} catch (final UncheckedIOException except) {
+			throw except.getCause();
+		}
+		writer.flush();
+	}
+}
@@ -0,0 +1,203 @@
+package com.sst.utopia.booking.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel: a structure that holds a large number of
+ * deadlines and hands back, tick by tick, the ones that have passed, with
+ * constant-time scheduling and without scanning the entries that are not yet
+ * due.
+ *
+ * Level 0 has one bucket per tick, covering one "span" of wheelSize ticks;
+ * each higher level has buckets as wide as the whole span of the level below
+ * it. An entry is kept in the lowest level whose current span contains its
+ * deadline, and as time moves into a new span, the corresponding bucket of the
+ * level above is emptied into the levels below. Levels are added as needed, so
+ * any deadline can be scheduled.
+ *
+ * Instances are safe for use by multiple threads.
+ *
+ * @param <K> the type of the keys scheduled
+ * @author Jonathan Lovelace
+ */
+public final class TimingWheel<K> {
+	/**
+	 * A scheduled key and its deadline.
+	 *
+	 * @param <K> the type of the key
+	 */
+	public static final class Entry<K> {
+		/**
+		 * The key.
+		 */
+		private final K key;
+		/**
+		 * The deadline, in milliseconds since the epoch.
+		 */
+		private final long deadline;
+
+		/**
+		 * @param key      the key
+		 * @param deadline the deadline, in milliseconds since the epoch
+		 */
+		Entry(final K key, final long deadline) {
+			this.key = key;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @return the key
+		 */
+		public K getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the deadline, in milliseconds since the epoch
+		 */
+		public long getDeadline() {
+			return deadline;
+		}
+	}
+
+	/**
+	 * The width of a level-0 bucket, in milliseconds.
+	 */
+	private final long tickMillis;
+	/**
+	 * How many buckets there are in each level.
+	 */
+	private final int wheelSize;
+	/**
+	 * The buckets of each level.
+	 */
+	private final List<ArrayDeque<Entry<K>>[]> levels = new ArrayList<>();
+	/**
+	 * The start of the current (not yet expired) level-0 tick, in milliseconds
+	 * since the epoch.
+	 */
+	private long current;
+	/**
+	 * How many entries are scheduled.
+	 */
+	private int size;
+
+	/**
+	 * @param tickMillis the width of a level-0 bucket, in milliseconds; deadlines
+	 *                   are reported at most this long after they pass
+	 * @param wheelSize  how many buckets there are in each level
+	 * @param startMillis the current time, in milliseconds since the epoch
+	 */
+	public TimingWheel(final long tickMillis, final int wheelSize,
+			final long startMillis) {
+		if (tickMillis <= 0 || wheelSize < 2) {
+			throw new IllegalArgumentException("Invalid wheel dimensions");
+		}
+		this.tickMillis = tickMillis;
+		this.wheelSize = wheelSize;
+		current = startMillis - startMillis % tickMillis;
+		addLevel();
+	}
+
+	/**
+	 * Add another (empty) level on top of the wheel.
+	 */
+	@SuppressWarnings("unchecked")
+	private void addLevel() {
+		final ArrayDeque<Entry<K>>[] buckets = new ArrayDeque[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			buckets[i] = new ArrayDeque<>();
+		}
+		levels.add(buckets);
+	}
+
+	/**
+	 * @param level a level of the wheel
+	 * @return the width of a bucket in that level, in milliseconds
+	 */
+	private long tickOf(final int level) {
+		long tick = tickMillis;
+		for (int i = 0; i < level; i++) {
+			tick *= wheelSize;
+		}
+		return tick;
+	}
+
+	/**
+	 * Schedule a key. A deadline that has already passed is reported on the next
+	 * call to {@link #advance(long)}.
+	 *
+	 * @param key      the key
+	 * @param deadline its deadline, in milliseconds since the epoch
+	 */
+	public synchronized void schedule(final K key, final long deadline) {
+		place(new Entry<>(key, deadline));
+		size++;
+	}
+
+	/**
+	 * Put an entry in the bucket it belongs in, given the current time.
+	 *
+	 * @param entry the entry
+	 */
+	private void place(final Entry<K> entry) {
+		final long deadline = Math.max(entry.getDeadline(), current);
+		int level = 0;
+		long tick = tickMillis;
+		while (deadline / (tick * wheelSize) != current / (tick * wheelSize)) {
+			level++;
+			tick *= wheelSize;
+		}
+		while (levels.size() <= level) {
+			addLevel();
+		}
+		levels.get(level)[(int) ((deadline / tick) % wheelSize)].add(entry);
+	}
+
+	/**
+	 * Move the wheel forward to the given time.
+	 *
+	 * @param now the current time, in milliseconds since the epoch
+	 * @return every entry whose deadline is now past
+	 */
+	public synchronized List<Entry<K>> advance(final long now) {
+		final List<Entry<K>> expired = new ArrayList<>();
+		while (current + tickMillis <= now) {
+			final ArrayDeque<Entry<K>> bucket =
+					levels.get(0)[(int) ((current / tickMillis) % wheelSize)];
+			expired.addAll(bucket);
+			bucket.clear();
+			current += tickMillis;
+			cascade();
+		}
+		size -= expired.size();
+		return expired;
+	}
+
+	/**
+	 * Having moved into a new tick, empty any higher-level buckets whose time has
+	 * come into the levels below them, highest level first.
+	 */
+	private void cascade() {
+		int level = 1;
+		while (level < levels.size() && current % tickOf(level) == 0) {
+			level++;
+		}
+		for (int i = level - 1; i >= 1; i--) {
+			final ArrayDeque<Entry<K>> bucket =
+					levels.get(i)[(int) ((current / tickOf(i)) % wheelSize)];
+			final List<Entry<K>> moving = new ArrayList<>(bucket);
+			bucket.clear();
+			moving.forEach(this::place);
+		}
+	}
+
+	/**
+	 * @return how many entries are scheduled
+	 */
+	public synchronized int size() {
+		return size;
+	}
+}
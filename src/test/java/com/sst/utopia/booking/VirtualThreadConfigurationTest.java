@@ -0,0 +1,50 @@
+package com.sst.utopia.booking;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Test of the "virtual" execution mode. Virtual threads need a Java 21 or later
+ * runtime, so this only runs on one.
+ * @author Jonathan Lovelace
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+		properties = "utopia.execution.mode=virtual")
+@EnabledIfSystemProperty(named = "java.specification.version",
+		matches = "2[1-9]|[3-9][0-9]")
+class VirtualThreadConfigurationTest {
+	/**
+	 * The running application.
+	 */
+	@Autowired
+	private ServletWebServerApplicationContext context;
+	/**
+	 * The executor requests should be run on.
+	 */
+	@Autowired
+	private ExecutorService virtualThreadExecutor;
+
+	@Test
+	public void testTomcatUsesVirtualThreads() throws Exception {
+		assertSame(virtualThreadExecutor,
+				((TomcatWebServer) context.getWebServer()).getTomcat().getConnector()
+						.getProtocolHandler().getExecutor(),
+				"Tomcat runs requests on the virtual-thread executor");
+		assertTrue(virtualThreadExecutor.submit(() -> (Boolean) Thread.class
+				.getMethod("isVirtual").invoke(Thread.currentThread())).get(),
+				"Executor runs tasks on virtual threads");
+	}
+}
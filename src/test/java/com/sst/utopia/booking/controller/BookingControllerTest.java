@@ -1,17 +1,26 @@
 package com.sst.utopia.booking.controller;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,10 +31,12 @@ import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
-import org.springframework.util.DigestUtils;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.jayway.jsonpath.JsonPath;
+
 import com.sst.utopia.booking.dao.AirportDao;
 import com.sst.utopia.booking.dao.FlightDao;
 import com.sst.utopia.booking.dao.TicketDao;
@@ -34,7 +45,11 @@ import com.sst.utopia.booking.model.Airport;
 import com.sst.utopia.booking.model.Flight;
 import com.sst.utopia.booking.model.SeatLocation;
 import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.TicketExportRow;
 import com.sst.utopia.booking.model.User;
+import com.sst.utopia.booking.service.FlightCache;
+import com.sst.utopia.booking.service.FlightManifests;
+import com.sst.utopia.booking.service.SeatInventory;
 
 /**
  * Test of the booking controller.
@@ -43,6 +58,11 @@ import com.sst.utopia.booking.model.User;
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
 class BookingControllerTest {
+	/**
+	 * A booking ID no booking has.
+	 */
+	private static final String UNKNOWN_BOOKING_ID = "no-such-booking";
+
 	@Autowired
     private WebApplicationContext context;
 
@@ -68,6 +88,21 @@ class BookingControllerTest {
 	 */
 	@Autowired
 	private TicketDao ticketDao;
+	/**
+	 * In-memory seat inventory, which the setup here bypasses.
+	 */
+	@Autowired
+	private SeatInventory inventory;
+	/**
+	 * Running occupancy counts, which the setup here also bypasses.
+	 */
+	@Autowired
+	private FlightManifests manifests;
+	/**
+	 * Cache of flights by number, which other tests fill.
+	 */
+	@Autowired
+	private FlightCache flightCache;
 
 	/**
 	 * Set up sample data the booking service can operate on.
@@ -84,9 +119,13 @@ class BookingControllerTest {
 		flightDao.save(new Flight(1, airportDao.findById("QQQ").get(),
 				LocalDateTime.now().plusDays(4), airportDao.findById("QQX").get(),
 				LocalDateTime.now().plusDays(6), 152));
+		ticketDao.deleteAllInBatch();
 		ticketDao.save(new Ticket(
 				new SeatLocation(flightDao.findByFlightNumber(152).get(0), 1, "A"),
 				1));
+		inventory.invalidate(flightDao.findByFlightNumber(152).get(0));
+		manifests.invalidate(flightDao.findByFlightNumber(152).get(0));
+		flightCache.invalidateAll();
 	}
 
 	@Test
@@ -99,6 +138,52 @@ class BookingControllerTest {
 				.andExpect(status().isConflict());
 	}
 
+	@Test
+	public void testPrometheusEndpoint() throws Exception {
+		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"))
+				.andExpect(status().isCreated());
+		mvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+				.andExpect(content().string(containsString(
+						"utopia_booking_operation_seconds_count{operation=\"bookTicket\"")));
+		mvc.perform(delete("/booking/book/flights/152/rows/1/seats/A"))
+				.andExpect(status().isNoContent());
+	}
+
+	@Test
+	public void testIdempotencyKey() throws Exception {
+		final String key = UUID.randomUUID().toString();
+		final String bookingId = JsonPath.read(mvc
+				.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+						.header("Idempotency-Key", key)
+						.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"))
+				.andExpect(status().isCreated()).andReturn().getResponse()
+				.getContentAsString(), "$.bookingId");
+		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+				.header("Idempotency-Key", key)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"))
+				.andExpect(status().isCreated())
+				.andExpect(header().string("Idempotent-Replayed", "true"))
+				.andExpect(jsonPath("$.bookingId", is(bookingId)));
+		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+				.header("Idempotency-Key", key)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 2}"))
+				.andExpect(status().isUnprocessableEntity());
+		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"))
+				.andExpect(status().isConflict());
+		final String payKey = UUID.randomUUID().toString();
+		mvc.perform(put("/booking/pay/bookings/" + bookingId)
+				.header("Idempotency-Key", payKey)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":300}"))
+				.andExpect(status().isOk());
+		mvc.perform(put("/booking/pay/bookings/" + bookingId)
+				.header("Idempotency-Key", payKey)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":300}"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Idempotent-Replayed", "true"));
+	}
+
 	@Test
 	public void testAcceptPayment() throws Exception {
 		mvc.perform(put("/booking/pay/flights/152/rows/1/seats/A")
@@ -117,15 +202,26 @@ class BookingControllerTest {
 				.andExpect(status().isConflict());
 	}
 
+	/**
+	 * Book seat 1A on flight 152 for the given user, expecting to succeed.
+	 * @param user the ID of the user
+	 * @return the booking ID of the new booking
+	 */
+	private String bookSeat(final int user) throws Exception {
+		return JsonPath.read(mvc
+				.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"id\":" + user + "}"))
+				.andExpect(status().isCreated()).andReturn().getResponse()
+				.getContentAsString(), "$.bookingId");
+	}
+
 	@Test
 	public void testAcceptPaymentByBookingId() throws Exception {
-		final String bookingId = DigestUtils.md5DigestAsHex("152 1 A 1".getBytes());
-		mvc.perform(put("/booking/pay/bookings/" + bookingId)
+		mvc.perform(put("/booking/pay/bookings/" + UNKNOWN_BOOKING_ID)
 				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":300}"))
 				.andExpect(status().isGone());
-		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
-				.contentType(MediaType.APPLICATION_JSON).content("{\"id\":1}"))
-				.andExpect(jsonPath("$.bookingId", is(bookingId)));
+		final String bookingId = bookSeat(1);
 		mvc.perform(put("/booking/pay/bookings/" + bookingId)
 				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":300}"))
 				.andExpect(status().isOk());
@@ -143,9 +239,9 @@ class BookingControllerTest {
 		mvc.perform(delete("/booking/book/flights/152/rows/1/seats/A")).andExpect(status().isNoContent());
 		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
 				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"));
-		assertTrue(ticketDao.findById(seat).map(Ticket::getReserver).isPresent());
+		assertTrue(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent());
 		mvc.perform(delete("/booking/book/flights/152/rows/1/seats/A")).andExpect(status().isNoContent());
-		assertFalse(ticketDao.findById(seat).map(Ticket::getReserver).isPresent());
+		assertFalse(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent());
 		mvc.perform(delete("/booking/book/flights/235/rows/4/seats/D")).andExpect(status().isNotFound());
 		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
 				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"));
@@ -156,20 +252,17 @@ class BookingControllerTest {
 
 	@Test
 	public void testCancelByBookingId() throws Exception {
-		final String bookingId = DigestUtils.md5DigestAsHex("152 1 A 1".getBytes());
-		mvc.perform(delete("/booking/book/bookings/" + bookingId))
+		mvc.perform(delete("/booking/book/bookings/" + UNKNOWN_BOOKING_ID))
 				.andExpect(status().isNoContent());
-		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
-				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"));
+		final String bookingId = bookSeat(1);
 		assertFalse(ticketDao.findByBookingId(bookingId).isEmpty());
 		mvc.perform(delete("/booking/book/bookings/" + bookingId))
 				.andExpect(status().isNoContent());
 		assertTrue(ticketDao.findByBookingId(bookingId).isEmpty());
-		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
-				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"));
-		mvc.perform(put("/booking/pay/bookings/" + bookingId)
+		final String secondId = bookSeat(1);
+		mvc.perform(put("/booking/pay/bookings/" + secondId)
 				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":300}"));
-		mvc.perform(delete("/booking/book/bookings/" + bookingId))
+		mvc.perform(delete("/booking/book/bookings/" + secondId))
 				.andExpect(status().isConflict());
 	}
 
@@ -194,21 +287,18 @@ class BookingControllerTest {
 
 	@Test
 	public void testExtendTimeoutByBookingId() throws Exception {
-		final String bookingId = DigestUtils.md5DigestAsHex("152 1 A 1".getBytes());
-		mvc.perform(put("/booking/extend/bookings/" + bookingId))
+		mvc.perform(put("/booking/extend/bookings/" + UNKNOWN_BOOKING_ID))
 				.andExpect(status().isGone());
-		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
-				.contentType(MediaType.APPLICATION_JSON).content("{\"id\":1}"));
+		final String bookingId = bookSeat(1);
 		mvc.perform(put("/booking/extend/bookings/" + bookingId))
 				.andExpect(status().isNoContent());
 		mvc.perform(delete("/booking/book/flights/152/rows/1/seats/A"));
 		mvc.perform(put("/booking/extend/bookings/" + bookingId))
 				.andExpect(status().isGone());
-		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
-				.contentType(MediaType.APPLICATION_JSON).content("{\"id\":1}"));
-		mvc.perform(put("/booking/pay/bookings/" + bookingId)
+		final String secondId = bookSeat(1);
+		mvc.perform(put("/booking/pay/bookings/" + secondId)
 				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":300}"));
-		mvc.perform(put("/booking/extend/bookings/" + bookingId))
+		mvc.perform(put("/booking/extend/bookings/" + secondId))
 				.andExpect(status().isConflict());
 	}
 
@@ -228,11 +318,9 @@ class BookingControllerTest {
 
 	@Test
 	public void testGetBookingIdDetails() throws Exception {
-		final String bookingId = DigestUtils.md5DigestAsHex("152 1 A 1".getBytes());
-		mvc.perform(get("/booking/details/bookings/" + bookingId))
+		mvc.perform(get("/booking/details/bookings/" + UNKNOWN_BOOKING_ID))
 				.andExpect(status().isNotFound());
-		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
-				.contentType(MediaType.APPLICATION_JSON).content("{\"id\":1}"));
+		final String bookingId = bookSeat(1);
 		mvc.perform(get("/booking/details/bookings/" + bookingId))
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$.reserved", is(true)))
@@ -245,4 +333,176 @@ class BookingControllerTest {
 				.andExpect(jsonPath("$.reserved", is(true)))
 				.andExpect(jsonPath("$.price", is(300)));
 	}
+
+	@Test
+	public void testGetSeatMap() throws Exception {
+		mvc.perform(get("/booking/details/flights/154/seats"))
+				.andExpect(status().isNotFound());
+		final String etag = mvc.perform(get("/booking/details/flights/152/seats"))
+				.andExpect(status().isOk()).andExpect(content().string("1:1\n"))
+				.andReturn().getResponse().getHeader("ETag");
+		mvc.perform(get("/booking/details/flights/152/seats")
+				.header("If-None-Match", etag))
+				.andExpect(status().isNotModified());
+		mvc.perform(get("/booking/details/flights/152/seats?seatClass=3"))
+				.andExpect(status().isOk()).andExpect(content().string(""));
+		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\":1}"));
+		mvc.perform(get("/booking/details/flights/152/seats")
+				.header("If-None-Match", etag))
+				.andExpect(status().isOk()).andExpect(content().string("1:h\n"));
+	}
+
+	@Test
+	public void testBookTickets() throws Exception {
+		ticketDao.save(new Ticket(
+				new SeatLocation(flightDao.findByFlightNumber(152).get(0), 1, "B"),
+				1));
+		final String request = "{\"user\":{\"id\":1},\"seats\":"
+				+ "[{\"row\":1,\"seat\":\"A\"},{\"row\":1,\"seat\":\"B\"}]}";
+		mvc.perform(post("/booking/book/flights/154/seats")
+				.contentType(MediaType.APPLICATION_JSON).content(request))
+				.andExpect(status().isNotFound());
+		mvc.perform(post("/booking/book/flights/152/seats")
+				.contentType(MediaType.APPLICATION_JSON).content(request))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.length()", is(2)));
+		mvc.perform(post("/booking/book/flights/152/seats")
+				.contentType(MediaType.APPLICATION_JSON).content(request))
+				.andExpect(status().isConflict());
+		for (final String malformed : new String[] { "{\"user\":{\"id\":1}}",
+				"{\"user\":{\"id\":1},\"seats\":null}",
+				"{\"user\":{\"id\":1},\"seats\":[]}",
+				"{\"user\":{\"id\":1},\"seats\":[{\"row\":2}]}",
+				"{\"user\":{\"id\":1},\"seats\":[null]}",
+				"{\"seats\":[{\"row\":2,\"seat\":\"A\"}]}" }) {
+			mvc.perform(post("/booking/book/flights/152/seats")
+					.contentType(MediaType.APPLICATION_JSON).content(malformed))
+					.andExpect(status().isBadRequest());
+		}
+	}
+
+	@Test
+	public void testCacheAdmin() throws Exception {
+		mvc.perform(get("/booking/details/flights/152/seats"))
+				.andExpect(status().isOk());
+		mvc.perform(get("/booking/admin/caches")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.flights.size", is(1)))
+				.andExpect(jsonPath("$['flights-by-number'].puts",
+						greaterThanOrEqualTo(1)))
+				.andExpect(jsonPath("$['" + Airport.class.getName() + "'].hits",
+						notNullValue()));
+		mvc.perform(delete("/booking/admin/caches/flights"))
+				.andExpect(status().isNoContent());
+		mvc.perform(get("/booking/admin/caches")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.flights.size", is(0)));
+		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\":1}"))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.flight.departureAirport.code", is("QQQ")));
+	}
+
+	@Test
+	public void testProvisioning() throws Exception {
+		for (final int flightNumber : new int[] { 160, 161 }) {
+			flightDao.save(new Flight(0, airportDao.findById("QQQ").get(),
+					LocalDateTime.now().plusDays(5), airportDao.findById("QQX").get(),
+					LocalDateTime.now().plusDays(7), flightNumber));
+		}
+		final String layout = "{\"bands\":["
+				+ "{\"firstRow\":1,\"lastRow\":2,\"letters\":\"AB\",\"seatClass\":1},"
+				+ "{\"firstRow\":3,\"lastRow\":10,\"letters\":\"ABCDEF\",\"seatClass\":3}]}";
+		mvc.perform(post("/booking/admin/flights/154/seats")
+				.contentType(MediaType.APPLICATION_JSON).content(layout))
+				.andExpect(status().isNotFound());
+		mvc.perform(post("/booking/admin/flights/160/seats")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"bands\":[]}"))
+				.andExpect(status().isBadRequest());
+		mvc.perform(post("/booking/admin/flights/160/seats")
+				.contentType(MediaType.APPLICATION_JSON).content(layout))
+				.andExpect(status().isCreated()).andExpect(content().string("52"));
+		mvc.perform(post("/booking/admin/flights/160/seats")
+				.contentType(MediaType.APPLICATION_JSON).content(layout))
+				.andExpect(status().isConflict());
+		mvc.perform(get("/booking/details/flights/160/rows/3/seats/F"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.seatClass", is(3)))
+				.andExpect(jsonPath("$.reserved", is(false)));
+		final String schedule = String.format("{\"flight\":160,\"layout\":%s}%n"
+				+ "{\"flight\":161,\"layout\":%s}%n{\"flight\":154,\"layout\":%s}%n",
+				layout, layout, layout);
+		mvc.perform(post("/booking/admin/flights/seats").content(schedule))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.flights", is(1)))
+				.andExpect(jsonPath("$.seats", is(52)))
+				.andExpect(jsonPath("$.skipped.length()", is(2)));
+		mvc.perform(post("/booking/book/flights/161/rows/10/seats/F/")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\":1}"))
+				.andExpect(status().isCreated());
+		mvc.perform(post("/booking/admin/flights/seats").content("{\"flight\":"))
+				.andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * Start an export and wait for its streamed body.
+	 * @param url the export URL
+	 * @return the completed export
+	 * @throws Exception on error in the export
+	 */
+	private MvcResult export(final String url) throws Exception {
+		final MvcResult started = mvc.perform(get(url))
+				.andExpect(request().asyncStarted()).andReturn();
+		return mvc.perform(asyncDispatch(started)).andExpect(status().isOk())
+				.andReturn();
+	}
+
+	@Test
+	public void testExport() throws Exception {
+		mvc.perform(post("/booking/book/flights/152/rows/1/seats/A/")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\": 1}"))
+				.andExpect(status().isCreated());
+		mvc.perform(get("/booking/admin/export/flights/154/tickets"))
+				.andExpect(status().isNotFound());
+		mvc.perform(get("/booking/admin/export/flights/152/tickets?format=xml"))
+				.andExpect(status().isBadRequest());
+		final MvcResult csv = export(
+				"/booking/admin/export/flights/152/tickets?format=csv");
+		assertTrue("Exported as CSV",
+				csv.getResponse().getContentType().startsWith("text/csv"));
+		final String[] lines = csv.getResponse().getContentAsString().split("\n");
+		assertEquals("Header and one ticket", 2, lines.length);
+		assertEquals("Header comes first", TicketExportRow.CSV_HEADER, lines[0]);
+		assertTrue("Row starts with the flight", lines[1].startsWith("152,"));
+		assertTrue("Row has the seat, its status, and its reserver",
+				lines[1].contains(",1,A,1,held,1,,"));
+		final String now = LocalDateTime.now().toString();
+		final String later = LocalDateTime.now().plusDays(5).toString();
+		final String json = export(String.format(
+				"/booking/admin/export/tickets?from=%s&to=%s", now, later))
+						.getResponse().getContentAsString();
+		assertTrue("One object per line", json.startsWith("{\"flight\":152,")
+				&& json.endsWith("}\n"));
+		assertTrue("Status is exported", json.contains("\"status\":\"held\""));
+		assertTrue("Reserver is exported", json.contains("\"reserver\":1,"));
+		assertFalse("No flights depart in an empty range",
+				export(String.format("/booking/admin/export/tickets?from=%s&to=%s",
+						later, later)).getResponse().getContentAsString()
+								.contains("152"));
+	}
+
+	@Test
+	public void testManifest() throws Exception {
+		mvc.perform(get("/booking/admin/manifests/flights/154"))
+				.andExpect(status().isNotFound());
+		mvc.perform(get("/booking/admin/manifests/flights/152"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.free", is(1)))
+				.andExpect(jsonPath("$.classes[0].seatClass", is(1)));
+		mvc.perform(put("/booking/pay/bookings/" + bookSeat(1))
+				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":250}"))
+				.andExpect(status().isOk());
+		mvc.perform(get("/booking/admin/manifests/flights/152"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.free", is(0)))
+				.andExpect(jsonPath("$.paid", is(1)))
+				.andExpect(jsonPath("$.revenue", is(250)));
+		mvc.perform(post("/booking/admin/manifests/reconcile"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.length()", is(0)));
+	}
 }
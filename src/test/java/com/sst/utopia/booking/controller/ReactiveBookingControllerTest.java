@@ -0,0 +1,164 @@
+package com.sst.utopia.booking.controller;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.jayway.jsonpath.JsonPath;
+
+import com.sst.utopia.booking.dao.AirportDao;
+import com.sst.utopia.booking.dao.FlightDao;
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.dao.UserDao;
+import com.sst.utopia.booking.model.Airport;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.User;
+import com.sst.utopia.booking.service.SeatInventory;
+
+/**
+ * Test of the reactive booking controller, with the service running as a
+ * reactive application.
+ * @author Jonathan Lovelace
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+		properties = "spring.main.web-application-type=reactive")
+class ReactiveBookingControllerTest {
+	/**
+	 * Client for the running service.
+	 */
+	@Autowired
+	private WebTestClient client;
+	/**
+	 * Airport DAO used in tests.
+	 */
+	@Autowired
+	private AirportDao airportDao;
+	/**
+	 * User DAO used in tests.
+	 */
+	@Autowired
+	private UserDao userDao;
+	/**
+	 * Flight DAO used in tests.
+	 */
+	@Autowired
+	private FlightDao flightDao;
+	/**
+	 * Ticket DAO used in tests.
+	 */
+	@Autowired
+	private TicketDao ticketDao;
+	/**
+	 * In-memory seat inventory, which the setup here bypasses.
+	 */
+	@Autowired
+	private SeatInventory inventory;
+
+	/**
+	 * Set up sample data the booking service can operate on.
+	 */
+	@BeforeEach
+	public void init() {
+		airportDao.save(new Airport("QQQ", "Sample Airport One"));
+		airportDao.save(new Airport("QQX", "Sample Airport Two"));
+		userDao.save(new User(1, "sampleUser", "Sample User", "sample@example.com",
+				"5555555555"));
+		flightDao.save(new Flight(1, airportDao.findById("QQQ").get(),
+				LocalDateTime.now().plusDays(4), airportDao.findById("QQX").get(),
+				LocalDateTime.now().plusDays(6), 152));
+		ticketDao.deleteAllInBatch();
+		ticketDao.save(new Ticket(
+				new SeatLocation(flightDao.findByFlightNumber(152).get(0), 1, "A"),
+				1));
+		inventory.invalidate(flightDao.findByFlightNumber(152).get(0));
+	}
+
+	/**
+	 * Book seat 1A on flight 152 as the sample user, expecting to succeed.
+	 * @return the booking ID of the new booking
+	 */
+	private String bookSeat() {
+		return JsonPath.read(client.post()
+				.uri("/booking/book/flights/152/rows/1/seats/A")
+				.contentType(MediaType.APPLICATION_JSON).syncBody("{\"id\":1}")
+				.exchange().expectStatus().isCreated().expectBody(String.class)
+				.returnResult().getResponseBody(), "$.bookingId");
+	}
+
+	@Test
+	public void testBookAndCancel() {
+		final String bookingId = bookSeat();
+		client.post().uri("/booking/book/flights/152/rows/1/seats/A")
+				.contentType(MediaType.APPLICATION_JSON).syncBody("{\"id\":1}")
+				.exchange().expectStatus().isEqualTo(409);
+		client.get().uri("/booking/details/bookings/" + bookingId).exchange()
+				.expectStatus().isOk().expectBody().jsonPath("$.reserved")
+				.isEqualTo(true);
+		client.delete().uri("/booking/book/bookings/" + bookingId).exchange()
+				.expectStatus().isNoContent();
+		client.get().uri("/booking/details/flights/152/rows/1/seats/A").exchange()
+				.expectStatus().isOk().expectBody().jsonPath("$.reserved")
+				.isEqualTo(false);
+		client.delete().uri("/booking/book/flights/235/rows/4/seats/D").exchange()
+				.expectStatus().isNotFound();
+	}
+
+	@Test
+	public void testPayAndExtend() {
+		client.put().uri("/booking/extend/flights/152/rows/1/seats/A").exchange()
+				.expectStatus().isEqualTo(410);
+		final String bookingId = bookSeat();
+		client.put().uri("/booking/extend/bookings/" + bookingId).exchange()
+				.expectStatus().isNoContent();
+		client.put().uri("/booking/pay/flights/152/rows/1/seats/A")
+				.contentType(MediaType.APPLICATION_JSON).syncBody("{\"price\":300}")
+				.exchange().expectStatus().isOk();
+		client.put().uri("/booking/pay/bookings/" + bookingId)
+				.contentType(MediaType.APPLICATION_JSON).syncBody("{\"price\":400}")
+				.exchange().expectStatus().isEqualTo(409);
+		client.put().uri("/booking/extend/flights/152/rows/1/seats/A").exchange()
+				.expectStatus().isEqualTo(409);
+	}
+
+	@Test
+	public void testBookTicketsAndSeatMap() {
+		ticketDao.save(new Ticket(
+				new SeatLocation(flightDao.findByFlightNumber(152).get(0), 1, "B"),
+				1));
+		final String request = "{\"user\":{\"id\":1},\"seats\":"
+				+ "[{\"row\":1,\"seat\":\"A\"},{\"row\":1,\"seat\":\"B\"}]}";
+		client.post().uri("/booking/book/flights/154/seats")
+				.contentType(MediaType.APPLICATION_JSON).syncBody(request).exchange()
+				.expectStatus().isNotFound();
+		client.post().uri("/booking/book/flights/152/seats")
+				.contentType(MediaType.APPLICATION_JSON)
+				.syncBody("{\"user\":{\"id\":1},\"seats\":[{\"row\":1}]}")
+				.exchange().expectStatus().isBadRequest();
+		client.post().uri("/booking/book/flights/152/seats")
+				.contentType(MediaType.APPLICATION_JSON).syncBody(request).exchange()
+				.expectStatus().isCreated().expectBody().jsonPath("$.length()")
+				.isEqualTo(2);
+		client.post().uri("/booking/book/flights/152/seats")
+				.contentType(MediaType.APPLICATION_JSON).syncBody(request).exchange()
+				.expectStatus().isEqualTo(409);
+		client.get().uri("/booking/details/flights/154/seats").exchange()
+				.expectStatus().isNotFound();
+		final String etag = client.get().uri("/booking/details/flights/152/seats")
+				.exchange().expectStatus().isOk().expectBody(String.class)
+				.isEqualTo("1:hh\n").returnResult().getResponseHeaders().getETag();
+		client.get().uri("/booking/details/flights/152/seats")
+				.header("If-None-Match", etag).exchange().expectStatus()
+				.isNotModified();
+	}
+}
@@ -0,0 +1,262 @@
+package com.sst.utopia.booking.controller;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.jayway.jsonpath.JsonPath;
+
+import com.sst.utopia.booking.dao.AirportDao;
+import com.sst.utopia.booking.dao.FlightDao;
+import com.sst.utopia.booking.dao.TicketDao;
+import com.sst.utopia.booking.dao.UserDao;
+import com.sst.utopia.booking.model.Airport;
+import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.SeatLocation;
+import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.User;
+import com.sst.utopia.booking.service.SeatInventory;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+/**
+ * Test of how many SQL statements each booking endpoint issues, so that
+ * changes to fetching (an association made eager again, a query losing its
+ * entity graph) that bring back extra joins or N+1 selects are caught. The
+ * limits allow only for what each endpoint needs; lower them when an endpoint
+ * gets cheaper.
+ *
+ * Each request is made once beforehand, so the flight cache and seat inventory
+ * are warm and only the per-request statements are counted.
+ *
+ * @author Jonathan Lovelace
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+class StatementCountTest {
+	/**
+	 * Counts the statements executed on one thread.
+	 */
+	private static final class StatementCounter implements QueryExecutionListener {
+		/**
+		 * How many statements have been executed since the count was reset.
+		 */
+		private final AtomicInteger count = new AtomicInteger();
+		/**
+		 * The thread whose statements are counted.
+		 */
+		private volatile Thread thread;
+
+		/**
+		 * Start counting the current thread's statements from zero.
+		 */
+		void reset() {
+			thread = Thread.currentThread();
+			count.set(0);
+		}
+
+		/**
+		 * @return how many statements the thread has executed since the reset
+		 */
+		int get() {
+			return count.get();
+		}
+
+		@Override
+		public void beforeQuery(final ExecutionInfo execInfo,
+				final List<QueryInfo> queryInfoList) {
+			// Counted afterwards.
+		}
+
+		@Override
+		public void afterQuery(final ExecutionInfo execInfo,
+				final List<QueryInfo> queryInfoList) {
+			if (Thread.currentThread() == thread) {
+				count.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * The counter installed on the data source.
+	 */
+	private static final StatementCounter COUNTER = new StatementCounter();
+
+	/**
+	 * Configuration wrapping the data source in a statement-counting proxy.
+	 */
+	@TestConfiguration
+	static class CountingConfiguration {
+		/**
+		 * @return a post-processor wrapping the data source
+		 */
+		@Bean
+		public static BeanPostProcessor countingDataSource() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(final Object bean,
+						final String beanName) {
+					if (bean instanceof DataSource) {
+						return ProxyDataSourceBuilder.create((DataSource) bean)
+								.name(beanName).listener(COUNTER).build();
+					} else {
+						return bean;
+					}
+				}
+			};
+		}
+	}
+
+	@Autowired
+	private WebApplicationContext context;
+
+	private MockMvc mvc;
+
+	/**
+	 * Airport DAO used in tests.
+	 */
+	@Autowired
+	private AirportDao airportDao;
+	/**
+	 * User DAO used in tests.
+	 */
+	@Autowired
+	private UserDao userDao;
+	/**
+	 * Flight DAO used in tests.
+	 */
+	@Autowired
+	private FlightDao flightDao;
+	/**
+	 * Ticket DAO used in tests.
+	 */
+	@Autowired
+	private TicketDao ticketDao;
+	/**
+	 * In-memory seat inventory, which the setup here bypasses.
+	 */
+	@Autowired
+	private SeatInventory inventory;
+
+	/**
+	 * Set up sample data the booking service can operate on.
+	 */
+	@BeforeEach
+	public void init() {
+		mvc = MockMvcBuilders.webAppContextSetup(context).build();
+		airportDao.save(new Airport("QQQ", "Sample Airport One"));
+		airportDao.save(new Airport("QQX", "Sample Airport Two"));
+		userDao.save(new User(1, "sampleUser", "Sample User", "sample@example.com",
+				"5555555555"));
+		flightDao.save(new Flight(1, airportDao.findById("QQQ").get(),
+				LocalDateTime.now().plusDays(4), airportDao.findById("QQX").get(),
+				LocalDateTime.now().plusDays(6), 152));
+		ticketDao.deleteAllInBatch();
+		ticketDao.save(new Ticket(
+				new SeatLocation(flightDao.findByFlightNumber(152).get(0), 1, "A"),
+				1));
+		ticketDao.save(new Ticket(
+				new SeatLocation(flightDao.findByFlightNumber(152).get(0), 1, "B"),
+				1));
+		inventory.invalidate(flightDao.findByFlightNumber(152).get(0));
+	}
+
+	/**
+	 * Make a request and count the statements it issues.
+	 * @param request  the request
+	 * @param expected what the response should be
+	 * @param limit    the most statements it may issue
+	 * @return the body of the response
+	 */
+	private String assertStatements(final RequestBuilder request,
+			final ResultMatcher expected, final int limit) throws Exception {
+		COUNTER.reset();
+		final String body = mvc.perform(request).andExpect(expected).andReturn()
+				.getResponse().getContentAsString();
+		final int count = COUNTER.get();
+		assertTrue(count <= limit, String.format(
+				"Expected at most %d statements, but there were %d", limit, count));
+		return body;
+	}
+
+	/**
+	 * Book a seat on flight 152 for the sample user.
+	 * @param seat the seat in row 1
+	 * @return the request
+	 */
+	private static RequestBuilder book(final String seat) {
+		return post("/booking/book/flights/152/rows/1/seats/" + seat)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"id\":1}");
+	}
+
+	@Test
+	public void testBookAndPay() throws Exception {
+		final String first = JsonPath.read(mvc.perform(book("A"))
+				.andExpect(status().isCreated()).andReturn().getResponse()
+				.getContentAsString(), "$.bookingId");
+		mvc.perform(put("/booking/pay/bookings/" + first)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":300}"))
+				.andExpect(status().isOk());
+		// The claiming UPDATE, and loading the ticket to return (and perhaps its
+		// flight); never the user.
+		final String second = JsonPath.read(
+				assertStatements(book("B"), status().isCreated(), 3), "$.bookingId");
+		// Finding the booking (and perhaps its flight), reloading it, and the
+		// UPDATE; never the user or the airports.
+		assertStatements(put("/booking/pay/bookings/" + second)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"price\":300}"),
+				status().isOk(), 4);
+		// The claiming UPDATE, which fails, and loading the flight's seats into the
+		// in-memory seat inventory to learn that the seat exists.
+		assertStatements(book("A"), status().isConflict(), 2);
+		// Now the inventory knows the seat exists, so it is not looked up.
+		assertStatements(book("B"), status().isConflict(), 1);
+	}
+
+	@Test
+	public void testDetails() throws Exception {
+		final String bookingId = JsonPath.read(mvc.perform(book("A"))
+				.andExpect(status().isCreated()).andReturn().getResponse()
+				.getContentAsString(), "$.bookingId");
+		mvc.perform(get("/booking/details/bookings/" + bookingId))
+				.andExpect(status().isOk());
+		mvc.perform(get("/booking/details/flights/152/seats"))
+				.andExpect(status().isOk());
+		// Each is a single projection query; the flight comes from the cache.
+		assertStatements(get("/booking/details/bookings/" + bookingId),
+				status().isOk(), 1);
+		assertStatements(get("/booking/details/flights/152/rows/1/seats/A"),
+				status().isOk(), 1);
+		// Served from the in-memory seat inventory.
+		assertStatements(get("/booking/details/flights/152/seats"),
+				status().isOk(), 0);
+	}
+}
@@ -0,0 +1,61 @@
+package com.sst.utopia.booking.model;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test case to ensure that aircraft seat layouts are validated properly.
+ *
+ * @author Jonathan Lovelace
+ */
+public class SeatLayoutTest {
+	/**
+	 * @param bands some bands of rows
+	 * @return a layout of those bands
+	 */
+	private static SeatLayout layout(final SeatLayout.Band... bands) {
+		return new SeatLayout(Arrays.asList(bands));
+	}
+
+	@Test
+	public final void testValidLayout() {
+		layout(new SeatLayout.Band(1, 3, "ACDF", 1),
+				new SeatLayout.Band(4, 30, "ABCDEF", 3)).validate();
+		layout(new SeatLayout.Band(1, 1, "AB", 1),
+				new SeatLayout.Band(1, 1, "CD", 2)).validate();
+		layout(new SeatLayout.Band(1, 1, "AB", 9)).validate();
+	}
+
+	@Test
+	public final void testInvalidLayouts() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new SeatLayout(Collections.emptyList()).validate(),
+				"Layout must have seats");
+		assertThrows(IllegalArgumentException.class,
+				() -> layout(new SeatLayout.Band(0, 3, "AB", 1)).validate(),
+				"Rows start at 1");
+		assertThrows(IllegalArgumentException.class,
+				() -> layout(new SeatLayout.Band(5, 3, "AB", 1)).validate(),
+				"Band can't end before it starts");
+		assertThrows(IllegalArgumentException.class,
+				() -> layout(new SeatLayout.Band(1, 3, "AA", 1)).validate(),
+				"Letters can't repeat");
+		assertThrows(IllegalArgumentException.class,
+				() -> layout(new SeatLayout.Band(1, 3, "ab", 1)).validate(),
+				"Letters must be upper-case");
+		assertThrows(IllegalArgumentException.class,
+				() -> layout(new SeatLayout.Band(1, 3, "AB", 0)).validate(),
+				"Class must be positive");
+		assertThrows(IllegalArgumentException.class,
+				() -> layout(new SeatLayout.Band(1, 3, "AB", 10)).validate(),
+				"Class must be a single digit");
+		assertThrows(IllegalArgumentException.class,
+				() -> layout(new SeatLayout.Band(1, 3, "AB", 1),
+						new SeatLayout.Band(3, 5, "BC", 3)).validate(),
+				"Bands can't overlap");
+	}
+}
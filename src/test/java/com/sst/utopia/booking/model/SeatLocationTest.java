@@ -0,0 +1,105 @@
+package com.sst.utopia.booking.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test case to ensure that seat locations are packed into ticket keys properly.
+ *
+ * @author Jonathan Lovelace
+ */
+public class SeatLocationTest {
+	/**
+	 * @param id the ID of the flight
+	 * @return a sample flight with that ID
+	 */
+	private static Flight flight(final int id) {
+		return new Flight(id, new Airport("QQQ", "Sample Airport One"),
+				LocalDateTime.now(), new Airport("QQX", "Sample Airport Two"),
+				LocalDateTime.now().plusHours(2), 152);
+	}
+
+	@Test
+	public final void testSeatOrdinal() {
+		assertEquals(1, SeatLocation.seatOrdinal("A"),
+				"Single letters are numbered from 1");
+		assertEquals(26, SeatLocation.seatOrdinal("Z"), "Z is the 26th letter");
+		assertEquals(27, SeatLocation.seatOrdinal("0"), "Digits follow letters");
+		assertEquals(37 + 2, SeatLocation.seatOrdinal("AB"),
+				"Longer designations are numbered in base 37");
+		assertThrows(IllegalArgumentException.class,
+				() -> SeatLocation.seatOrdinal(""), "Seat can't be empty");
+		assertThrows(IllegalArgumentException.class,
+				() -> SeatLocation.seatOrdinal("ABCD"), "Seat can't be too long");
+		assertThrows(IllegalArgumentException.class,
+				() -> SeatLocation.seatOrdinal("a"), "Seat must be upper-case");
+	}
+
+	@Test
+	public final void testKeysAreDistinct() {
+		final Set<Long> keys = new HashSet<>();
+		final String[] seats = { "A", "B", "K", "Z", "0", "9", "AA", "A0", "ZZZ",
+				"999" };
+		for (final int flight : new int[] { 1, 2, Integer.MAX_VALUE }) {
+			for (final int row : new int[] { 0, 1, 40, 0xFFFF }) {
+				for (final String seat : seats) {
+					keys.add(new SeatLocation(flight(flight), row, seat).getKey());
+				}
+			}
+		}
+		assertEquals(3 * 4 * seats.length, keys.size(),
+				"Every location has its own key");
+	}
+
+	@Test
+	public final void testKey() {
+		assertEquals((3L << 32) | (12 << 16) | 3,
+				new SeatLocation(flight(3), 12, "C").getKey(),
+				"Key is flight, row, and seat ordinal");
+		assertNotEquals(new SeatLocation(flight(3), 12, "C").getKey(),
+				new SeatLocation(flight(4), 12, "C").getKey(),
+				"Flight is part of the key");
+		assertThrows(IllegalArgumentException.class,
+				() -> new SeatLocation(flight(3), 0x10000, "C").getKey(),
+				"Row must fit in 16 bits");
+		assertThrows(IllegalArgumentException.class,
+				() -> new SeatLocation(flight(3), -1, "C").getKey(),
+				"Row can't be negative");
+	}
+
+	@Test
+	public final void testSeatKey() {
+		final SeatKey key = SeatKey.of(new SeatLocation(flight(3), 12, "C"));
+		assertEquals(3, key.getFlightId(), "Flight ID is unpacked");
+		assertEquals(12, key.getRow(), "Row is unpacked");
+		assertEquals(3, key.getSeatOrdinal(), "Seat ordinal is unpacked");
+		assertEquals(key, SeatKey.of(new SeatLocation(flight(3), 12, "C")),
+				"Keys of the same seat on copies of a flight are equal");
+		assertEquals(key.hashCode(),
+				SeatKey.of(new SeatLocation(flight(3), 12, "C")).hashCode(),
+				"Equal keys have equal hash codes");
+		assertNotEquals(key, SeatKey.of(new SeatLocation(flight(3), 12, "D")),
+				"Keys of different seats differ");
+	}
+
+	@Test
+	public final void testEquality() {
+		assertEquals(new SeatLocation(flight(3), 12, "C"),
+				new SeatLocation(flight(3), 12, "C"),
+				"Locations on copies of a flight are equal");
+		assertEquals(new SeatLocation(flight(3), 12, "C").hashCode(),
+				new SeatLocation(flight(3), 12, "C").hashCode(),
+				"Equal locations have equal hash codes");
+		assertNotEquals(new SeatLocation(flight(3), 12, "C"),
+				new SeatLocation(null, 12, "C"), "Flight is compared");
+		assertNotEquals(new SeatLocation(flight(3), 12, "C"),
+				new SeatLocation(flight(3), 13, "C"), "Row is compared");
+	}
+}
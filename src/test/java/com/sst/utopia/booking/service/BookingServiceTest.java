@@ -2,16 +2,25 @@ package com.sst.utopia.booking.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import com.sst.utopia.booking.dao.AirportDao;
@@ -20,10 +29,16 @@ import com.sst.utopia.booking.dao.TicketDao;
 import com.sst.utopia.booking.dao.UserDao;
 import com.sst.utopia.booking.model.Airport;
 import com.sst.utopia.booking.model.Flight;
+import com.sst.utopia.booking.model.FlightManifest;
+import com.sst.utopia.booking.model.SeatClassOccupancy;
 import com.sst.utopia.booking.model.SeatLocation;
 import com.sst.utopia.booking.model.Ticket;
+import com.sst.utopia.booking.model.TicketDetails;
 import com.sst.utopia.booking.model.User;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 /**
  * Tests of the booking service class.
  *
@@ -52,6 +67,21 @@ public class BookingServiceTest {
 	 */
 	@Autowired
 	private TicketDao ticketDao;
+	/**
+	 * In-memory seat inventory, which the setup here bypasses.
+	 */
+	@Autowired
+	private SeatInventory inventory;
+	/**
+	 * Running occupancy counts, which the setup here also bypasses.
+	 */
+	@Autowired
+	private FlightManifests manifests;
+	/**
+	 * Registry the service's metrics are published in.
+	 */
+	@Autowired
+	private MeterRegistry registry;
 	/**
 	 * Object under test.
 	 */
@@ -71,24 +101,65 @@ public class BookingServiceTest {
 						LocalDateTime.now().plusDays(4),
 				airportDao.findById("QQX").get(),
 						LocalDateTime.now().plusDays(6), 152));
+		ticketDao.deleteAllInBatch();
 		ticketDao.save(new Ticket(
 				new SeatLocation(flightDao.findByFlightNumber(152).get(0), 1, "A"),
 				1));
+		inventory.invalidate(flightDao.findByFlightNumber(152).get(0));
+		manifests.invalidate(flightDao.findByFlightNumber(152).get(0));
 	}
 
 	@Test
 	public void testBookTicket() {
 		final SeatLocation seat = new SeatLocation(
 				flightDao.findByFlightNumber(152).get(0), 1, "A");
-		assertFalse(ticketDao.findById(seat).map(Ticket::getReserver).isPresent(),
+		assertFalse(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent(),
 				"Ticket starts out unbooked");
 		testee.bookTicket(seat, userDao.findById(1).get()); // TODO: Make getByUsername(), getByEmail(), getByPhone()
-		assertTrue(ticketDao.findById(seat).map(Ticket::getReserver).isPresent(),
+		assertTrue(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent(),
 				"Ticket is reserved after booking");
 		assertThrows(IllegalArgumentException.class,
 				() -> testee.bookTicket(seat, userDao.findById(1).get()),
 				"Can't book already-booked ticket");
-		testee.cancelPendingReservation(ticketDao.findById(seat).get());
+		testee.cancelPendingReservation(ticketDao.findById(seat.getKey()).get());
+	}
+
+	@Test
+	public void testBookMissingSeat() {
+		final SeatLocation seat = new SeatLocation(
+				flightDao.findByFlightNumber(152).get(0), 40, "K");
+		assertThrows(NoSuchElementException.class,
+				() -> testee.bookTicket(seat, userDao.findById(1).get()),
+				"Can't book seat that isn't in the database");
+	}
+
+	@Test
+	public void testOperationMetrics() {
+		final SeatLocation seat = new SeatLocation(
+				flightDao.findByFlightNumber(152).get(0), 1, "A");
+		final long before = count("success");
+		testee.bookTicket(seat, userDao.findById(1).get());
+		assertEquals(before + 1, count("success"),
+				"Successful booking is timed");
+		final long conflicts = count("IllegalArgumentException");
+		assertThrows(IllegalArgumentException.class,
+				() -> testee.bookTicket(seat, userDao.findById(1).get()));
+		assertEquals(conflicts + 1, count("IllegalArgumentException"),
+				"Failed booking is timed with its outcome");
+		final Timer db = registry.find("utopia.booking.operation.db")
+				.tags("operation", "bookTicket", "outcome", "success").timer();
+		assertTrue(db != null && db.count() > 0, "Database time is recorded");
+		testee.cancelPendingReservation(ticketDao.findById(seat.getKey()).get());
+	}
+
+	/**
+	 * @param outcome an outcome of booking a ticket
+	 * @return how many bookings have had that outcome
+	 */
+	private long count(final String outcome) {
+		final Timer timer = registry.find("utopia.booking.operation")
+				.tags("operation", "bookTicket", "outcome", outcome).timer();
+		return timer == null ? 0 : timer.count();
 	}
 
 	@Test
@@ -96,18 +167,32 @@ public class BookingServiceTest {
 		final SeatLocation seat = new SeatLocation(
 				flightDao.findByFlightNumber(152).get(0), 1, "A");
 		assertThrows(IllegalArgumentException.class,
-				() -> testee.acceptPayment(ticketDao.findById(seat).get(), 150),
+				() -> testee.acceptPayment(ticketDao.findById(seat.getKey()).get(), 150),
 				"Can't pay for unbooked ticket");
 		final Ticket ticket = testee.bookTicket(seat, userDao.findById(1).get());
-		assertFalse(ticketDao.findById(seat).map(Ticket::getPrice).isPresent(),
+		assertFalse(ticketDao.findById(seat.getKey()).map(Ticket::getPrice).isPresent(),
 				"Price not set after booking");
 		testee.acceptPayment(ticket, 300);
-		assertEquals(300, ticketDao.findById(seat).map(Ticket::getPrice).get(),
+		assertEquals(300, ticketDao.findById(seat.getKey()).map(Ticket::getPrice).get(),
 				"Price set after paying");
-		assertFalse(ticketDao.findById(seat).map(Ticket::getReservationTimeout)
+		assertFalse(ticketDao.findById(seat.getKey()).map(Ticket::getReservationTimeout)
 				.isPresent(), "Reservation timeout gone after paying");
-		ticket.setReserver(null);
-		ticketDao.saveAndFlush(ticket);
+	}
+
+	@Test
+	public void testOptimisticLocking() {
+		final SeatLocation seat = new SeatLocation(
+				flightDao.findByFlightNumber(152).get(0), 1, "A");
+		testee.bookTicket(seat, userDao.findById(1).get());
+		final Ticket stale = ticketDao.findById(seat.getKey()).get();
+		testee.extendReservationTimeout(ticketDao.findById(seat.getKey()).get());
+		stale.setReserver(null);
+		assertThrows(OptimisticLockingFailureException.class,
+				() -> ticketDao.saveAndFlush(stale),
+				"Can't overwrite a concurrent change to a ticket");
+		assertTrue(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent(),
+				"Concurrent change survives");
+		testee.cancelPendingReservation(ticketDao.findById(seat.getKey()).get());
 	}
 
 	@Test
@@ -115,10 +200,10 @@ public class BookingServiceTest {
 		final SeatLocation seat = new SeatLocation(
 				flightDao.findByFlightNumber(152).get(0), 1, "A");
 		final Ticket ticket = testee.bookTicket(seat, userDao.findById(1).get());
-		assertTrue(ticketDao.findById(seat).map(Ticket::getReserver).isPresent(),
+		assertTrue(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent(),
 				"Seat reserved after booking");
 		testee.cancelPendingReservation(ticket);
-		assertFalse(ticketDao.findById(seat).map(Ticket::getReserver).isPresent(),
+		assertFalse(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent(),
 				"Seat no longer reserved after cancelling");
 		testee.cancelPendingReservation(ticket); // test idempotency of cancellation
 	}
@@ -128,13 +213,60 @@ public class BookingServiceTest {
 		final SeatLocation seat = new SeatLocation(
 				flightDao.findByFlightNumber(152).get(0), 1, "A");
 		final Ticket ticket = testee.bookTicket(seat, userDao.findById(1).get());
-		assertFalse(ticketDao.findById(seat).map(Ticket::getPrice).isPresent(),
+		assertFalse(ticketDao.findById(seat.getKey()).map(Ticket::getPrice).isPresent(),
 				"Price not set after booking");
 		testee.acceptPayment(ticket.getBookingId(), 300);
-		assertEquals(300, ticketDao.findById(seat).map(Ticket::getPrice).get(),
+		assertEquals(300, ticketDao.findById(seat.getKey()).map(Ticket::getPrice).get(),
 				"Price set after paying with booking ID");
-		ticket.setReserver(null);
-		ticketDao.saveAndFlush(ticket);
+	}
+
+	@Test
+	public void testTicketDetails() {
+		final SeatLocation seat = new SeatLocation(
+				flightDao.findByFlightNumber(152).get(0), 1, "A");
+		assertFalse(testee.getTicketDetails(seat).isReserved(),
+				"Details show seat free before booking");
+		final Ticket ticket = testee.bookTicket(seat, userDao.findById(1).get());
+		final TicketDetails details = testee.getBookingDetails(ticket.getBookingId());
+		assertTrue(details.isReserved(), "Details show seat reserved after booking");
+		assertEquals(152, details.getFlight().getFlightNumber(),
+				"Details have the flight filled in");
+		assertEquals(1, details.getRow(), "Details have the row");
+		assertEquals("A", details.getSeat(), "Details have the seat");
+		assertNotNull(details.getReservationTimeout(), "Details have the timeout");
+		assertEquals(ticket.getBookingId(),
+				testee.getTicketDetails(seat).getBookingId(),
+				"Details by seat have the booking ID");
+		assertNull(testee.getBookingDetails("no-such-booking"),
+				"No details for unknown booking ID");
+		assertThrows(NoSuchElementException.class, () -> testee.getTicketDetails(
+				new SeatLocation(seat.getFlight(), 40, "K")),
+				"No details for missing seat");
+	}
+
+	@Test
+	public void testFindByBookingId() {
+		final Flight flight = flightDao.findByFlightNumber(152).get(0);
+		final SeatLocation first = new SeatLocation(flight, 1, "A");
+		final SeatLocation second = new SeatLocation(flight, 1, "B");
+		ticketDao.save(new Ticket(second, 1));
+		final User user = userDao.findById(1).get();
+		final String bookingId = testee.bookTicket(first, user).getBookingId();
+		assertEquals(first.getKey(),
+				ticketDao.findOneByBookingId(bookingId).map(Ticket::getId).get(),
+				"Ticket found by its booking ID");
+		assertFalse(ticketDao.findOneByBookingId("no-such-booking").isPresent(),
+				"Unknown booking ID finds nothing");
+		assertEquals(first.getKey(), testee.getBooking(bookingId).getId(),
+				"Service finds ticket by booking ID");
+		assertNull(testee.getBooking("no-such-booking"),
+				"Service gives null for unknown booking ID");
+		assertThrows(DataIntegrityViolationException.class,
+				() -> ticketDao.claimSeat(second.getKey(), user,
+						LocalDateTime.now().plusMinutes(10), bookingId),
+				"Booking IDs are unique");
+		assertFalse(ticketDao.findById(second.getKey()).map(Ticket::getReserver)
+				.isPresent(), "Seat not booked under a duplicate booking ID");
 	}
 
 	@Test
@@ -142,10 +274,176 @@ public class BookingServiceTest {
 		final SeatLocation seat = new SeatLocation(
 				flightDao.findByFlightNumber(152).get(0), 1, "A");
 		final Ticket ticket = testee.bookTicket(seat, userDao.findById(1).get());
-		assertTrue(ticketDao.findById(seat).map(Ticket::getReserver).isPresent(),
+		assertTrue(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent(),
 				"Seat reserved after booking");
 		testee.cancelPendingReservation(ticket.getBookingId());
-		assertFalse(ticketDao.findById(seat).map(Ticket::getReserver).isPresent(),
+		assertFalse(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent(),
 				"Seat no longer reserved after cancelling using booking ID");
 	}
+
+	@Test
+	public void testSeatInventory() {
+		final Flight flight = flightDao.findByFlightNumber(152).get(0);
+		final SeatLocation seat = new SeatLocation(flight, 1, "A");
+		assertTrue(testee.isSeatFree(seat), "Seat starts out free");
+		final Ticket ticket = testee.bookTicket(seat, userDao.findById(1).get());
+		assertEquals(SeatState.HELD, inventory.getState(seat),
+				"Seat held after booking");
+		testee.acceptPayment(ticket, 300);
+		assertEquals(SeatState.PAID, testee.getSeatMap(flight).getState(1, "A"),
+				"Seat paid for after payment");
+		assertEquals(SeatState.UNKNOWN, testee.getSeatMap(flight).getState(1, "B"),
+				"Seat not in database is unknown");
+		final Ticket paid = ticketDao.findById(seat.getKey()).get();
+		paid.setReserver(null);
+		ticketDao.saveAndFlush(paid);
+		assertNotNull(registry.find("utopia.flight.seats.free").tag("flight", "152")
+				.gauge(), "Gauge published while flight loaded");
+		inventory.invalidate(flight);
+		assertNull(registry.find("utopia.flight.seats.free").tag("flight", "152")
+				.gauge(), "Gauge removed when flight dropped");
+		assertTrue(testee.isSeatFree(seat), "Seat free after reload");
+		assertNotNull(registry.find("utopia.flight.seats.free").tag("flight", "152")
+				.gauge(), "Gauge published again after reload");
+	}
+
+	@Test
+	public void testStaleInventory() {
+		final Flight flight = flightDao.findByFlightNumber(152).get(0);
+		final SeatLocation seat = new SeatLocation(flight, 1, "A");
+		testee.bookTicket(seat, userDao.findById(1).get());
+		assertEquals(SeatState.HELD, inventory.getState(seat),
+				"Seat held after booking");
+		// As if another instance had released the seat.
+		final Ticket released = ticketDao.findById(seat.getKey()).get();
+		released.setReserver(null);
+		ticketDao.saveAndFlush(released);
+		assertNotNull(testee.bookTicket(seat, userDao.findById(1).get()),
+				"Seat shown as held in memory is still booked if free in database");
+		assertThrows(IllegalArgumentException.class,
+				() -> testee.bookTicket(seat, userDao.findById(1).get()),
+				"Seat held in database is not booked again");
+	}
+
+	@Test
+	public void testGetFlight() {
+		final Flight flight = testee.getFlight(152);
+		assertEquals(152, flight.getFlightNumber(), "Flight found by number");
+		assertSame(flight, testee.getFlight(152), "Flight served from cache");
+		assertNull(testee.getFlight(154), "Unknown flight number gives null");
+		assertNull(testee.getFlight(154), "Unknown flight number is remembered");
+	}
+
+	@Test
+	public void testReleaseExpiredReservations() {
+		final SeatLocation seat = new SeatLocation(
+				flightDao.findByFlightNumber(152).get(0), 1, "A");
+		testee.bookTicket(seat, userDao.findById(1).get(),
+				LocalDateTime.now().minusMinutes(1));
+		assertTrue(testee.getOldestExpiredReservation(LocalDateTime.now())
+				.isPresent(), "Expired reservation found");
+		assertEquals(1, testee.releaseExpiredReservations(LocalDateTime.now(), 10),
+				"Expired reservation released");
+		assertFalse(ticketDao.findById(seat.getKey()).map(Ticket::getReserver).isPresent(),
+				"Seat no longer reserved after release");
+		assertEquals(0, testee.releaseExpiredReservations(LocalDateTime.now(), 10),
+				"Nothing left to release");
+	}
+
+	@Test
+	public void testBookTickets() {
+		final Flight flight = flightDao.findByFlightNumber(152).get(0);
+		final SeatLocation first = new SeatLocation(flight, 1, "A");
+		final SeatLocation second = new SeatLocation(flight, 1, "B");
+		ticketDao.save(new Ticket(second, 1));
+		final User user = userDao.findById(1).get();
+		testee.bookTicket(first, user);
+		assertThrows(IllegalArgumentException.class,
+				() -> testee.bookTickets(Arrays.asList(second, first), user),
+				"Can't book group including already-booked ticket");
+		assertFalse(ticketDao.findById(second.getKey()).map(Ticket::getReserver).isPresent(),
+				"Group booking is all or nothing");
+		testee.cancelPendingReservation(ticketDao.findById(first.getKey()).get());
+		final List<String> bookingIds =
+				testee.bookTickets(Arrays.asList(first, second), user);
+		assertEquals(2, bookingIds.size(), "One booking ID per seat");
+		assertEquals(bookingIds.get(1),
+				ticketDao.findById(second.getKey()).map(Ticket::getBookingId).get(),
+				"Booking IDs returned in order");
+		bookingIds.forEach(testee::cancelPendingReservation);
+	}
+
+	/**
+	 * @param flight    a flight
+	 * @param seatClass a class of seat
+	 * @return the running counts of that class on that flight
+	 */
+	private SeatClassOccupancy occupancy(final Flight flight,
+			final int seatClass) {
+		return testee.getManifest(flight).getClasses().stream()
+				.filter(counts -> counts.getSeatClass() == seatClass).findAny().get();
+	}
+
+	/**
+	 * @param counts  some counts
+	 * @param free    how many seats should be free
+	 * @param held    how many seats should be held
+	 * @param paid    how many seats should be paid for
+	 * @param revenue how much should have been paid
+	 * @param message what the counts should reflect
+	 */
+	private static void assertCounts(final SeatClassOccupancy counts,
+			final long free, final long held, final long paid, final long revenue,
+			final String message) {
+		assertEquals(Arrays.asList(free, held, paid, revenue),
+				Arrays.asList(counts.getFree(), counts.getHeld(), counts.getPaid(),
+						counts.getRevenue()),
+				message);
+	}
+
+	@Test
+	public void testManifest() {
+		final Flight flight = flightDao.findByFlightNumber(152).get(0);
+		final SeatLocation first = new SeatLocation(flight, 1, "A");
+		final SeatLocation second = new SeatLocation(flight, 1, "B");
+		final SeatLocation third = new SeatLocation(flight, 2, "A");
+		ticketDao.save(new Ticket(second, 1));
+		ticketDao.save(new Ticket(third, 3));
+		final User user = userDao.findById(1).get();
+		final FlightManifest initial = testee.getManifest(flight);
+		assertEquals(2, initial.getClasses().size(), "Counts for each class");
+		assertEquals(3, initial.getFree(), "All seats start out free");
+		testee.bookTicket(first, user);
+		testee.acceptPayment(ticketDao.findById(first.getKey()).get(), 300);
+		testee.bookTickets(Arrays.asList(second, third), user);
+		assertCounts(occupancy(flight, 1), 0, 1, 1, 300,
+				"Booking and payment are counted");
+		assertCounts(occupancy(flight, 3), 0, 1, 0, 0,
+				"Group bookings are counted");
+		testee.cancelPendingReservation(ticketDao.findById(third.getKey()).get());
+		assertCounts(occupancy(flight, 3), 1, 0, 0, 0,
+				"Cancellation is counted");
+		testee.bookTicket(third, user, LocalDateTime.now().minusMinutes(1));
+		assertCounts(occupancy(flight, 3), 0, 1, 0, 0,
+				"Rebooking is counted");
+		testee.releaseExpiredReservations(LocalDateTime.now(), 10);
+		assertCounts(occupancy(flight, 3), 1, 0, 0, 0,
+				"Bulk expiry is counted");
+		testee.releaseExpiredReservations(Collections.singletonList(second),
+				LocalDateTime.now().plusDays(1));
+		assertCounts(occupancy(flight, 1), 1, 0, 1, 300,
+				"Expiry of single seats is counted");
+		assertTrue(testee.reconcileManifests().isEmpty(),
+				"Running counts agree with the database");
+		ticketDao.claimSeat(third.getKey(), user, LocalDateTime.now().plusDays(1),
+				"bypassing-the-service");
+		final List<SeatClassOccupancy> drift = testee.reconcileManifests();
+		assertEquals(1, drift.size(), "Drift found in one class");
+		assertCounts(drift.get(0), 1, -1, 0, 0,
+				"Drift is how much the running counts exceeded the database");
+		assertCounts(occupancy(flight, 3), 0, 1, 0, 0,
+				"Drift is corrected");
+		assertTrue(testee.reconcileManifests().isEmpty(),
+				"No drift once corrected");
+	}
 }
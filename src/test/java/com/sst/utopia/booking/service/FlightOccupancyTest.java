@@ -0,0 +1,78 @@
+package com.sst.utopia.booking.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.sst.utopia.booking.model.SeatClassOccupancy;
+
+/**
+ * Tests of the running counts of a flight's occupancy, and when a recount from
+ * the database may replace them.
+ *
+ * @author Jonathan Lovelace
+ */
+public class FlightOccupancyTest {
+	/**
+	 * @param free how many seats are free
+	 * @param held how many seats are held
+	 * @return counts of a single class of seat on a flight with that many free
+	 *         and held seats
+	 */
+	private static List<SeatClassOccupancy> counts(final long free,
+			final long held) {
+		return Collections.singletonList(
+				new SeatClassOccupancy(1, 152, 1, free, held, 0L, 0L));
+	}
+
+	@Test
+	public void testReconcile() {
+		final FlightOccupancy testee = new FlightOccupancy(1, 152, counts(10, 0));
+		final List<SeatClassOccupancy> drift =
+				testee.reconcile(testee.getVersion(), counts(9, 1));
+		assertEquals(1, drift.size(), "Drifted class is reported");
+		assertEquals(1, drift.get(0).getFree(), "By how much it drifted");
+		assertEquals(9, testee.getClasses().get(0).getFree(),
+				"Recount replaces running counts");
+	}
+
+	@Test
+	public void testChangedDuringRecount() {
+		final FlightOccupancy testee = new FlightOccupancy(1, 152, counts(10, 0));
+		final long version = testee.getVersion();
+		testee.add(1, -1, 1, 0, 0);
+		assertTrue(testee.reconcile(version, counts(10, 0)).isEmpty(),
+				"Recount racing a change is discarded");
+		assertEquals(9, testee.getClasses().get(0).getFree(),
+				"Running counts are kept");
+	}
+
+	@Test
+	public void testPendingDuringRecount() {
+		final FlightOccupancy testee = new FlightOccupancy(1, 152, counts(10, 0));
+		// A booking is committing; the recount sees it before its change is added.
+		testee.beginChange();
+		assertTrue(testee.reconcile(testee.getVersion(), counts(9, 1)).isEmpty(),
+				"Recount while a change is pending is discarded");
+		assertEquals(10, testee.getClasses().get(0).getFree(),
+				"Running counts are kept");
+		testee.add(1, -1, 1, 0, 0);
+		testee.endChange();
+		assertEquals(9, testee.getClasses().get(0).getFree(),
+				"Change is counted once");
+		assertTrue(testee.reconcile(testee.getVersion(), counts(9, 1)).isEmpty(),
+				"Counts then agree with the database");
+	}
+
+	@Test
+	public void testForgotten() {
+		final FlightOccupancy testee = new FlightOccupancy(1, 152, counts(10, 0));
+		testee.forget();
+		assertTrue(testee.reconcile(testee.getVersion(), counts(9, 1)).isEmpty(),
+				"Dropped counts are not reconciled");
+	}
+}
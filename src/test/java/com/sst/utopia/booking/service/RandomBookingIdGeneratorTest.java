@@ -0,0 +1,70 @@
+package com.sst.utopia.booking.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the random booking-ID generator.
+ *
+ * @author Jonathan Lovelace
+ */
+public class RandomBookingIdGeneratorTest {
+	/**
+	 * Object under test.
+	 */
+	private final RandomBookingIdGenerator testee = new RandomBookingIdGenerator();
+
+	@Test
+	public void testFormat() {
+		for (int i = 0; i < 1000; i++) {
+			final String id = testee.generate(null, null);
+			assertEquals(22, id.length(), "Booking ID is 22 characters long");
+			assertTrue(id.matches("[A-Za-z0-9_-]+"), "Booking ID is URL-safe");
+		}
+	}
+
+	@Test
+	public void testUnique() {
+		final Set<String> ids = new HashSet<>();
+		for (int i = 0; i < 100000; i++) {
+			assertTrue(ids.add(testee.generate(null, null)),
+					"Booking IDs do not repeat");
+		}
+	}
+
+	@Test
+	public void testUniqueAcrossThreads() throws Exception {
+		final ExecutorService threads = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<List<String>>> batches = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				batches.add(threads.submit(() -> {
+					final List<String> batch = new ArrayList<>();
+					for (int j = 0; j < 10000; j++) {
+						batch.add(testee.generate(null, null));
+					}
+					return batch;
+				}));
+			}
+			final Set<String> ids = new HashSet<>();
+			for (final Future<List<String>> batch : batches) {
+				for (final String id : batch.get()) {
+					assertTrue(ids.add(id),
+							"Booking IDs generated at once on several threads do not repeat");
+				}
+			}
+		} finally {
+			threads.shutdown();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.sst.utopia.booking.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.sst.utopia.booking.model.SeatKey;
+import com.sst.utopia.booking.model.SeatLocation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Tests of the single-flight booking gate.
+ *
+ * @author Jonathan Lovelace
+ */
+public class SeatGateTest {
+	/**
+	 * Registry the gate publishes its metrics in.
+	 */
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	/**
+	 * Object under test.
+	 */
+	private final SeatGate testee = new SeatGate(registry);
+	/**
+	 * The seat being booked.
+	 */
+	private final SeatKey seat = new SeatKey(SeatLocation.key(1, 1, "A"));
+
+	/**
+	 * Start a booking attempt on another thread that does not finish until
+	 * released, and wait for it to start.
+	 *
+	 * @param release  what the attempt waits for
+	 * @param succeeds whether the attempt then succeeds
+	 * @return the attempt's result
+	 */
+	private CompletableFuture<String> leader(final CountDownLatch release,
+			final boolean succeeds) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CompletableFuture<String> result =
+				CompletableFuture.supplyAsync(() -> testee.book(seat, () -> {
+					started.countDown();
+					try {
+						release.await();
+					} catch (final InterruptedException except) {
+						throw new IllegalStateException(except);
+					}
+					if (succeeds) {
+						return "leader";
+					} else {
+						throw new IllegalStateException("database unavailable");
+					}
+				}));
+		started.await();
+		return result;
+	}
+
+	/**
+	 * Start a booking attempt on another thread, and wait until it is blocked
+	 * waiting for the leader.
+	 *
+	 * @param booking the attempt
+	 * @param result  where to put the attempt's result, or what it threw
+	 * @return the thread
+	 */
+	private Thread follower(final Supplier<String> booking,
+			final AtomicReference<Object> result) throws InterruptedException {
+		final Thread thread = new Thread(() -> {
+			try {
+				result.set(testee.book(seat, booking));
+			} catch (final RuntimeException except) {
+				result.set(except);
+			}
+		});
+		thread.start();
+		for (int i = 0; i < 5000 && thread.getState() != Thread.State.WAITING
+				&& thread.isAlive(); i++) {
+			Thread.sleep(1);
+		}
+		return thread;
+	}
+
+	@Test
+	public void testLosersShed() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CompletableFuture<String> leader = leader(release, true);
+		final AtomicInteger attempts = new AtomicInteger();
+		final AtomicReference<Object> result = new AtomicReference<>();
+		final Thread follower =
+				follower(() -> "follower " + attempts.incrementAndGet(), result);
+		release.countDown();
+		follower.join();
+		assertEquals("leader", leader.get(), "Leader books the seat");
+		assertTrue(result.get() instanceof IllegalArgumentException,
+				"Follower told the seat is taken");
+		assertEquals(0, attempts.get(), "Follower never tried the database");
+		assertEquals(1.0, registry.counter("utopia.booking.shed").count(),
+				"Shed request counted");
+	}
+
+	@Test
+	public void testFollowerRetriesAfterFailure() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CompletableFuture<String> leader = leader(release, false);
+		final AtomicReference<Object> result = new AtomicReference<>();
+		final Thread follower = follower(() -> "follower", result);
+		release.countDown();
+		follower.join();
+		assertThrows(ExecutionException.class, leader::get);
+		assertEquals("follower", result.get(),
+				"Follower tries for itself if leader fails");
+		assertEquals("again", testee.book(seat, () -> "again"),
+				"Gate is open once nobody is booking");
+	}
+}
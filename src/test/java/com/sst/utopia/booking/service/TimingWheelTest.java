@@ -0,0 +1,60 @@
+package com.sst.utopia.booking.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the hierarchical timing wheel.
+ *
+ * @author Jonathan Lovelace
+ */
+public class TimingWheelTest {
+	/**
+	 * @param entries entries from the wheel
+	 * @return their keys
+	 */
+	private static List<String> keys(final List<TimingWheel.Entry<String>> entries) {
+		return entries.stream().map(TimingWheel.Entry::getKey)
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public final void testNothingFiresEarly() {
+		final TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 0);
+		wheel.schedule("a", 2500);
+		assertTrue(wheel.advance(2000).isEmpty(), "Not due yet");
+		assertTrue(wheel.advance(2999).isEmpty(), "Due but its tick not over");
+		assertEquals(1, wheel.size(), "Still scheduled");
+		assertEquals(Arrays.asList("a"), keys(wheel.advance(3000)),
+				"Fires once its tick is over");
+		assertEquals(0, wheel.size(), "No longer scheduled");
+	}
+
+	@Test
+	public final void testOverdueFiresOnNextTick() {
+		final TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 5000);
+		wheel.schedule("late", 1000);
+		assertEquals(Arrays.asList("late"), keys(wheel.advance(6000)),
+				"Overdue entry fires at the end of the current tick");
+	}
+
+	@Test
+	public final void testDistantDeadlinesCascade() {
+		final TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 0);
+		// 8 ticks per level-0 span, 64 per level-1 span: these need three levels
+		wheel.schedule("near", 7_500);
+		wheel.schedule("middle", 40_200);
+		wheel.schedule("far", 300_900);
+		assertEquals(Arrays.asList("near"), keys(wheel.advance(8_000)));
+		assertTrue(wheel.advance(40_999).isEmpty(), "Middle not over yet");
+		assertEquals(Arrays.asList("middle"), keys(wheel.advance(41_000)));
+		assertTrue(wheel.advance(300_999).isEmpty(), "Far not over yet");
+		assertEquals(Arrays.asList("far"), keys(wheel.advance(301_000)));
+	}
+}